@@ -67,4 +67,8 @@ abstract class BaseDao<T : Any>(
     override fun findAllWithChanges(queryDefinition: QueryDefinition): LiveResults<T> {
         return databaseManager.findAllWithChanges(table, mapper, queryDefinition)
     }
+
+    override fun findAllWithChanges(dependency: DatabaseManager.Dependency, queryDefinition: QueryDefinition): LiveResults<T> {
+        return databaseManager.findAllWithChanges(table, mapper, dependency, queryDefinition)
+    }
 }
\ No newline at end of file
@@ -28,4 +28,6 @@ interface Dao<T : Any> {
 
     // LiveResults<T> findAllWithChanges(boolean withRelations); // I don't remember how this worked and I'd need a JOIN table to remember ^_^
     fun findAllWithChanges(queryDefinition: QueryDefinition): LiveResults<T> // LiveResults<T> findAllWithChanges(DatabaseManager.QueryDefinition queryDefinition, boolean withRelations); // I don't remember how this worked and I'd need a JOIN table to remember ^_^
+
+    fun findAllWithChanges(dependency: DatabaseManager.Dependency, queryDefinition: QueryDefinition): LiveResults<T>
 }
\ No newline at end of file
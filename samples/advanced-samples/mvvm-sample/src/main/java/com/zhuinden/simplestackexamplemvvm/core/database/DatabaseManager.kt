@@ -22,6 +22,7 @@ import android.database.Cursor
 import android.database.sqlite.SQLiteDatabase
 import android.database.sqlite.SQLiteOpenHelper
 import com.zhuinden.simplestackexamplemvvm.core.scheduler.BackgroundScheduler
+import java.lang.ref.ReferenceQueue
 import java.lang.ref.WeakReference
 import java.util.*
 
@@ -56,6 +57,68 @@ class DatabaseManager constructor(
         fun query(database: SQLiteDatabase, table: Table): Cursor
     }
 
+    enum class Operation {
+        INSERT,
+        DELETE,
+        DELETE_ALL
+    }
+
+    /**
+     * The rows of a table that were modified by a transaction.
+     *
+     * For [Operation.INSERT], the written values are kept by id.
+     */
+    class ChangeSet(
+        val table: Table,
+        val operation: Operation,
+        val ids: Set<String>,
+        val values: Map<String, ContentValues> = emptyMap()
+    )
+
+    /**
+     * Describes which changes of its table should make a [LiveResults] run its query again.
+     */
+    sealed class Dependency {
+        abstract fun isAffectedBy(changeSet: ChangeSet, resultIds: Set<String>): Boolean
+
+        object WholeTable : Dependency() {
+            override fun isAffectedBy(changeSet: ChangeSet, resultIds: Set<String>): Boolean = true
+        }
+
+        class Ids(private val predicate: (String) -> Boolean) : Dependency() {
+            override fun isAffectedBy(changeSet: ChangeSet, resultIds: Set<String>): Boolean =
+                changeSet.ids.any(predicate)
+        }
+
+        /**
+         * A row affects the query if it was part of the previous results (so it could have left them),
+         * or if its new value matches the filter (so it could have entered them).
+         */
+        class ColumnFilter(
+            private val field: Fields,
+            private val value: Any
+        ) : Dependency() {
+            override fun isAffectedBy(changeSet: ChangeSet, resultIds: Set<String>): Boolean {
+                for (id in changeSet.ids) {
+                    if (resultIds.contains(id)) {
+                        return true
+                    }
+                    val contentValues = changeSet.values[id]
+                    if (contentValues != null && normalize(contentValues.get(field.fieldName)) == normalize(value)) {
+                        return true
+                    }
+                }
+                return false
+            }
+
+            private fun normalize(value: Any?): Any? = when (value) {
+                is Boolean -> if (value) 1L else 0L
+                is Number -> value.toLong()
+                else -> value?.toString()
+            }
+        }
+    }
+
     val database: SQLiteDatabase = writableDatabase
 
     override fun onCreate(database: SQLiteDatabase) {
@@ -79,7 +142,14 @@ class DatabaseManager constructor(
         fun from(contentValues: ContentValues, t: T): ContentValues
     }
 
+    private val pendingChanges = ThreadLocal<MutableList<ChangeSet>>()
+
     fun executeTransaction(transaction: Transaction) {
+        val isOutermostTransaction = pendingChanges.get() == null
+        if (isOutermostTransaction) {
+            pendingChanges.set(LinkedList())
+        }
+        val changes = pendingChanges.get()!!
         try {
             database.beginTransaction()
             transaction.execute(database)
@@ -88,9 +158,26 @@ class DatabaseManager constructor(
             if (database.inTransaction()) {
                 database.endTransaction()
             }
+            if (isOutermostTransaction) {
+                pendingChanges.remove()
+            }
+        }
+        if (isOutermostTransaction) {
+            for (changeSet in changes) {
+                refresh(changeSet)
+            }
         }
     }
 
+    /**
+     * Records the rows modified by the current transaction, they are dispatched once the outermost transaction succeeds.
+     */
+    fun recordChange(changeSet: ChangeSet) {
+        val changes = pendingChanges.get()
+            ?: throw IllegalStateException("Changes can only be recorded inside a transaction!")
+        changes.add(changeSet)
+    }
+
     private fun <T : Any> collectObjectFromCursor(mapper: Mapper<T>, cursor: Cursor): List<T> {
         val list: MutableList<T> = LinkedList()
         if (cursor.moveToFirst()) {
@@ -128,6 +215,7 @@ class DatabaseManager constructor(
 
     fun <T : Any> insert(table: Table, mapper: Mapper<T>, elements: List<T>) {
         executeTransaction { sqLiteDatabase: SQLiteDatabase ->
+            val values = LinkedHashMap<String, ContentValues>()
             var contentValues = ContentValues()
             for (t in elements) {
                 contentValues = mapper.from(contentValues, t)
@@ -135,89 +223,107 @@ class DatabaseManager constructor(
                     null,
                     contentValues,
                     SQLiteDatabase.CONFLICT_REPLACE)
+                values[table.getId(t)] = ContentValues(contentValues)
             }
+            recordChange(ChangeSet(table, Operation.INSERT, values.keys, values))
         }
-        refresh(table)
     }
 
     fun <T> delete(table: Table, element: T) {
         element ?: return
 
         executeTransaction { sqLiteDatabase: SQLiteDatabase ->
+            val id = table.getId(element)
             sqLiteDatabase.delete(table.tableName,
-                table.idFieldName + " = ?", arrayOf(table.getId(element)))
+                table.idFieldName + " = ?", arrayOf(id))
+            recordChange(ChangeSet(table, Operation.DELETE, setOf(id)))
         }
-        refresh(table)
     }
 
     fun <T> deleteList(table: Table, elements: List<T>) {
         executeTransaction { sqLiteDatabase: SQLiteDatabase ->
+            val ids = LinkedHashSet<String>()
             for (t in elements) {
                 t ?: continue
 
+                val id = table.getId(t)
                 sqLiteDatabase.delete(table.tableName,
-                    table.idFieldName + " = ?", arrayOf(table.getId(t)))
+                    table.idFieldName + " = ?", arrayOf(id))
+                ids.add(id)
             }
+            recordChange(ChangeSet(table, Operation.DELETE, ids))
         }
-        refresh(table)
     }
 
     fun deleteAll(table: Table) {
         executeTransaction { sqLiteDatabase: SQLiteDatabase ->
             sqLiteDatabase.delete(table.tableName, null, null)
+            recordChange(ChangeSet(table, Operation.DELETE_ALL, emptySet()))
         }
-        refresh(table)
     }
 
     // This allows for reactivity.
-    private val liveDatas = Collections.synchronizedList(LinkedList<WeakReference<LiveResults<*>>>())
+    private class LiveResultsReference(
+        liveResults: LiveResults<*>,
+        val table: Table,
+        referenceQueue: ReferenceQueue<LiveResults<*>>
+    ) : WeakReference<LiveResults<*>>(liveResults, referenceQueue)
+
+    private val liveResultsByTable = HashMap<Table, MutableSet<LiveResultsReference>>()
+    private val referenceQueue = ReferenceQueue<LiveResults<*>>()
 
     fun <T : Any> findAllWithChanges(table: Table, mapper: Mapper<T>, queryDefinition: QueryDefinition): LiveResults<T> {
-        return LiveResults(backgroundScheduler, this, table, mapper, queryDefinition)
+        return findAllWithChanges(table, mapper, Dependency.WholeTable, queryDefinition)
+    }
+
+    fun <T : Any> findAllWithChanges(table: Table, mapper: Mapper<T>, dependency: Dependency, queryDefinition: QueryDefinition): LiveResults<T> {
+        return LiveResults(backgroundScheduler, this, table, mapper, queryDefinition, dependency)
     }
 
     fun addLiveResults(liveResults: LiveResults<*>) {
-        synchronized(this) {
-            liveDatas.add(WeakReference(liveResults))
+        synchronized(liveResultsByTable) {
+            purgeDeadReferences()
+            liveResultsByTable.getOrPut(liveResults.table) { LinkedHashSet() }
+                .add(LiveResultsReference(liveResults, liveResults.table, referenceQueue))
         }
     }
 
-    fun refresh() {
-        synchronized(this) {
-            val iterator = liveDatas.iterator()
-            while (iterator.hasNext()) {
-                val weakReference = iterator.next()
-                val liveData = weakReference.get()
-                if (liveData == null) {
-                    iterator.remove()
-                } else {
-                    liveData.refresh()
-                }
+    private fun purgeDeadReferences() {
+        while (true) {
+            val reference = referenceQueue.poll() as LiveResultsReference? ?: return
+            val references = liveResultsByTable[reference.table] ?: continue
+            references.remove(reference)
+            if (references.isEmpty()) {
+                liveResultsByTable.remove(reference.table)
             }
         }
     }
 
+    private fun collectLiveResults(table: Table): List<LiveResults<*>> {
+        synchronized(liveResultsByTable) {
+            purgeDeadReferences()
+            val references = liveResultsByTable[table] ?: return emptyList()
+            return references.mapNotNull { it.get() }
+        }
+    }
+
+    fun refresh() {
+        val tables = synchronized(liveResultsByTable) { ArrayList(liveResultsByTable.keys) }
+        refresh(*tables.toTypedArray())
+    }
+
     fun refresh(vararg tables: Table) {
-        synchronized(this) {
-            val iterator = liveDatas.iterator()
-            while (iterator.hasNext()) {
-                val weakReference = iterator.next()
-                val liveData = weakReference.get()
-                if (liveData == null) {
-                    iterator.remove()
-                } else {
-                    var isInTables = false
-                    val table = liveData.table
-                    for (currentTable in tables) {
-                        if (currentTable === table) {
-                            isInTables = true
-                            break
-                        }
-                    }
-                    if (isInTables) {
-                        liveData.refresh()
-                    }
-                }
+        for (table in tables) {
+            for (liveResults in collectLiveResults(table)) {
+                liveResults.refresh()
+            }
+        }
+    }
+
+    fun refresh(changeSet: ChangeSet) {
+        for (liveResults in collectLiveResults(changeSet.table)) {
+            if (liveResults.isAffectedBy(changeSet)) {
+                liveResults.refresh()
             }
         }
     }
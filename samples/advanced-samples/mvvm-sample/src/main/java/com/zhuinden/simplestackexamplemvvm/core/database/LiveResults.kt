@@ -30,10 +30,28 @@ class LiveResults<T : Any>(
     val table: DatabaseManager.Table,
     private val mapper: DatabaseManager.Mapper<T>,
     private val queryDefinition: QueryDefinition,
+    val dependency: DatabaseManager.Dependency = DatabaseManager.Dependency.WholeTable,
 ) : MutableLiveData<List<T>>() {
 
     private val isInvalid = AtomicBoolean(true) // from ComputableLiveData
     private val isComputing = AtomicBoolean(false) // from ComputableLiveData
+
+    @Volatile
+    private var resultIds: Set<String> = emptySet() // only tracked for column filters
+
+    fun isAffectedBy(changeSet: DatabaseManager.ChangeSet): Boolean {
+        if (changeSet.table !== table) {
+            return false
+        }
+        if (changeSet.operation == DatabaseManager.Operation.DELETE_ALL) {
+            return true
+        }
+        if (isInvalid.get() || isComputing.get()) {
+            return true // the results of a running query are not known yet
+        }
+        return dependency.isAffectedBy(changeSet, resultIds)
+    }
+
     fun refresh() {
         isInvalid.set(true)
         backgroundScheduler.execute {
@@ -60,6 +78,9 @@ class LiveResults<T : Any>(
                             value = databaseManager.findAll(table, mapper, queryDefinition)
                         }
                         if (didCompute) {
+                            if (dependency is DatabaseManager.Dependency.ColumnFilter) {
+                                resultIds = value.mapTo(HashSet()) { table.getId(it) }
+                            }
                             postValue(value)
                         }
                     } finally {
@@ -24,7 +24,8 @@ class TasksDataSource(
         }
 
     fun getTaskWithChanges(taskId: String?): LiveResults<Task> {
-        return taskDao.findAllWithChanges { database: SQLiteDatabase, table: DatabaseManager.Table ->
+        val dependency = DatabaseManager.Dependency.Ids { id -> id == taskId }
+        return taskDao.findAllWithChanges(dependency) { database: SQLiteDatabase, table: DatabaseManager.Table ->
             val queryBuilder: QueryBuilder = QueryBuilder.of(table)
             if (taskId == null) {
                 queryBuilder.where("1 = 0") // empty results
@@ -82,7 +83,7 @@ class TasksDataSource(
     }
 
     val activeTasksWithChanges: LiveResults<Task>
-        get() = taskDao.findAllWithChanges { database: SQLiteDatabase, table: DatabaseManager.Table ->
+        get() = taskDao.findAllWithChanges(DatabaseManager.Dependency.ColumnFilter(TaskTable.COMPLETED, 0)) { database: SQLiteDatabase, table: DatabaseManager.Table ->
             QueryBuilder.of(table)
                 .where(TaskTable.Q_COMPLETED + " = ?", 0)
                 .orderBy(TaskTable.Q_ENTRY_ID, QueryBuilder.Sort.ASC)
@@ -90,7 +91,7 @@ class TasksDataSource(
         }
 
     val completedTasksWithChanges: LiveResults<Task>
-        get() = taskDao.findAllWithChanges { database: SQLiteDatabase, table: DatabaseManager.Table ->
+        get() = taskDao.findAllWithChanges(DatabaseManager.Dependency.ColumnFilter(TaskTable.COMPLETED, 1)) { database: SQLiteDatabase, table: DatabaseManager.Table ->
             QueryBuilder.of(table)
                 .where(TaskTable.Q_COMPLETED + " = ?", 1)
                 .orderBy(TaskTable.Q_ENTRY_ID, QueryBuilder.Sort.ASC)
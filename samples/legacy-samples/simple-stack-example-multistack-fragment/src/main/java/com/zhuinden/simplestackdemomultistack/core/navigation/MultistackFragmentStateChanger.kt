@@ -1,7 +1,7 @@
 package com.zhuinden.simplestackdemomultistack.core.navigation
 
-import android.os.Handler
-import android.os.Looper
+import android.content.Context
+import android.view.Choreographer
 import androidx.fragment.app.Fragment
 import androidx.fragment.app.FragmentManager
 import androidx.fragment.app.FragmentTransaction
@@ -12,79 +12,113 @@ class MultistackFragmentStateChanger(
     private val containerId: Int,
     private val fragmentManager: FragmentManager
 ) {
-    private val handler = Handler(Looper.getMainLooper())
+    // state changes received before the next frame are committed as a single transaction
+    private var batchedPreviousState: List<MultistackFragmentKey>? = null
+    private var batchedNewState: List<MultistackFragmentKey>? = null
+    private var batchedDirection: Int = StateChange.REPLACE
+    private var isFrameCallbackPosted = false
 
-    fun handleStateChange(stateChange: StateChange) {
-        var didExecutePendingTransactions = false
+    private val frameCallback = Choreographer.FrameCallback {
+        isFrameCallbackPosted = false
+        commitBatch()
+    }
+
+    // tag -> fragment and tag -> stack identifier, so that resolving the fragments of keys doesn't scan the fragment manager
+    private val fragmentsByTag = HashMap<String, Fragment>()
+    private val stackIdentifiersByTag = HashMap<String, String>()
 
-        try {
-            fragmentManager.executePendingTransactions() // two synchronous immediate fragment transactions can overlap.
-            didExecutePendingTransactions = true
-        } catch (e: IllegalStateException) { // executePendingTransactions() can fail, but this should "just work".
+    private var topFragment: Fragment? = null
+
+    init {
+        for (fragment in fragmentManager.fragments) { // fragments restored before the state changer was created
+            index(fragment)
+            if (fragment.id == containerId && fragment.isAdded && !fragment.isDetached && !fragment.isHidden) {
+                topFragment = fragment
+            }
         }
 
-        if (didExecutePendingTransactions) {
-            executeFragmentTransaction(stateChange)
-        } else { // failed to execute pending transactions
-            if (!fragmentManager.isDestroyed) { // ignore state change if activity is dead. :(
-                handler.post {
-                    if (!fragmentManager.isDestroyed) { // ignore state change if activity is dead. :(
-                        executeFragmentTransaction(stateChange)
-                    }
-                }
+        fragmentManager.registerFragmentLifecycleCallbacks(object : FragmentManager.FragmentLifecycleCallbacks() {
+            override fun onFragmentPreAttached(fm: FragmentManager, f: Fragment, context: Context) {
+                index(f)
+            }
+
+            override fun onFragmentDetached(fm: FragmentManager, f: Fragment) {
+                unindex(f)
             }
+        }, false)
+    }
+
+    private fun index(fragment: Fragment) {
+        val tag = fragment.tag ?: return
+        val key = fragment.arguments?.getParcelable<MultistackFragmentKey>("KEY") ?: return
+        fragmentsByTag[tag] = fragment
+        stackIdentifiersByTag[tag] = key.stackIdentifier()
+    }
+
+    private fun unindex(fragment: Fragment) {
+        val tag = fragment.tag ?: return
+        if (fragmentsByTag[tag] === fragment) { // the tag may already belong to a replacing fragment
+            fragmentsByTag.remove(tag)
+            stackIdentifiersByTag.remove(tag)
+        }
+        if (topFragment === fragment) {
+            topFragment = null
         }
     }
 
-    private fun executeFragmentTransaction(stateChange: StateChange) {
+    fun handleStateChange(stateChange: StateChange) {
         val previousState = stateChange.getPreviousKeys<MultistackFragmentKey>()
         val newState = stateChange.getNewKeys<MultistackFragmentKey>()
 
-        val fragmentTransaction = fragmentManager.beginTransaction()
+        val batchedNewState = batchedNewState
+        if (batchedNewState != null && batchedNewState.last().stackIdentifier() != newState.last().stackIdentifier()) {
+            commitBatch() // the fragments of different stacks must not be merged into one net change
+        }
 
-        // detach fragment not in this backstack
-        var topFragment: Fragment? = null
-
-        val allFragments = fragmentManager.fragments // can't trust findFragmentById.
-        @Suppress("SENSELESS_COMPARISON")
-        if (allFragments != null) {
-            for (i in allFragments.size - 1 downTo 0) {
-                val candidate = allFragments[i]
-                if (candidate != null && candidate.id == containerId && candidate.isAdded && candidate.view != null && !candidate.isDetached && !candidate.isHidden) {
-                    topFragment = candidate
-                    break
-                }
-            }
+        if (this.batchedNewState == null) {
+            batchedPreviousState = previousState
         }
+        this.batchedNewState = newState
+        batchedDirection = stateChange.direction
 
-        if (topFragment != null) {
-            var found = false
-            for (previousKey in previousState) {
-                val fragment: Fragment? = fragmentManager.findFragmentByTag(previousKey.fragmentTag)
-                if (topFragment === fragment) {
-                    found = true
-                    break
-                }
-            }
+        if (!isFrameCallbackPosted) {
+            isFrameCallbackPosted = true
+            Choreographer.getInstance().postFrameCallback(frameCallback)
+        }
+    }
 
-            if (!found) {
-                for (newKey in newState) {
-                    val fragment: Fragment? = fragmentManager.findFragmentByTag(newKey.fragmentTag)
-                    if (topFragment === fragment) {
-                        found = true
-                        break
-                    }
-                }
-            }
+    private fun commitBatch() {
+        val previousState = batchedPreviousState ?: return
+        val newState = batchedNewState ?: return
+        batchedPreviousState = null
+        this.batchedNewState = null
+
+        if (!fragmentManager.isDestroyed) { // ignore state change if activity is dead. :(
+            executeFragmentTransaction(previousState, newState, batchedDirection)
+        }
+    }
+
+    private fun executeFragmentTransaction(previousState: List<MultistackFragmentKey>, newState: List<MultistackFragmentKey>, direction: Int) {
+        val topNewKey = newState.last()
+
+        val fragmentTransaction = fragmentManager.beginTransaction()
+            .setReorderingAllowed(true)
+
+        // detach fragment not in this backstack
+        val visibleFragment = topFragment
+
+        if (visibleFragment != null && !visibleFragment.isDetached) {
+            val stackIdentifier = stackIdentifiersByTag[visibleFragment.tag]
+            val currentStackIdentifier = topNewKey.stackIdentifier()
 
-            if (!found) { // this fragment belongs to a different backstack, so we can safely hide it.
-                fragmentTransaction.detach(topFragment)
+            if (stackIdentifier != currentStackIdentifier) { // this fragment belongs to a different backstack, so we can safely hide it.
+                fragmentTransaction.detach(visibleFragment)
             }
         }
         // end detach fragment not in this backstack
 
         fragmentTransaction.apply {
-            when (stateChange.direction) {
+            when (direction) {
                 StateChange.FORWARD -> {
                     setCustomAnimations(R.anim.slide_in_from_right, R.anim.slide_out_to_left, R.anim.slide_in_from_right, R.anim.slide_out_to_left)
                 }
@@ -97,7 +131,7 @@ class MultistackFragmentStateChanger(
             }
 
             for (oldKey in previousState) {
-                val fragment = fragmentManager.findFragmentByTag(oldKey.fragmentTag)
+                val fragment = fragmentsByTag[oldKey.fragmentTag]
                 if (fragment != null) {
                     if (!newState.contains(oldKey)) {
                         remove(fragment)
@@ -107,19 +141,22 @@ class MultistackFragmentStateChanger(
                 }
             }
             for (newKey in newState) {
-                var fragment: Fragment? = fragmentManager.findFragmentByTag(newKey.fragmentTag)
-                if (newKey == stateChange.topNewKey<Any>()) {
+                var fragment: Fragment? = fragmentsByTag[newKey.fragmentTag]
+                if (newKey == topNewKey) {
                     if (fragment != null) {
                         if (fragment.isRemoving) { // Fragments are quirky, they die asynchronously. Ignore if they're still there.
                             fragment = newKey.newFragment()
                             replace(containerId, fragment, newKey.fragmentTag)
+                            index(fragment)
                         } else if (fragment.isDetached) {
                             attach(fragment)
                         }
                     } else {
                         fragment = newKey.newFragment()
                         add(containerId, fragment, newKey.fragmentTag)
+                        index(fragment)
                     }
+                    topFragment = fragment
                 } else {
                     if (fragment != null && !fragment.isDetached) {
                         detach(fragment)
@@ -7,13 +7,15 @@ import com.zhuinden.simplestack.ScopedServices
 import com.zhuinden.statebundle.StateBundle
 
 class FragmentStackHost(
-    initialKey: Any
+    initialKey: Any,
+    parentBackstack: Backstack
 ) : Bundleable, ScopedServices.HandlesBack {
     var isActiveForBack: Boolean = false
 
     val backstack = Backstack()
 
     init {
+        backstack.setParentBackstack(parentBackstack) // services not found in the nested stack are shared from the parent
         backstack.setup(History.of(initialKey))
     }
 
@@ -25,9 +25,9 @@ class RootScreen : DefaultFragmentKey(), DefaultServiceProvider.HasServices {
 
     override fun bindServices(serviceBinder: ServiceBinder) {
         with(serviceBinder) {
-            add(FragmentStackHost(First1Screen()), FIRST_STACK)
-            add(FragmentStackHost(SecondScreen()), SECOND_STACK)
-            add(FragmentStackHost(ThirdScreen()), THIRD_STACK)
+            add(FragmentStackHost(First1Screen(), backstack), FIRST_STACK)
+            add(FragmentStackHost(SecondScreen(), backstack), SECOND_STACK)
+            add(FragmentStackHost(ThirdScreen(), backstack), THIRD_STACK)
         }
     }
 }
\ No newline at end of file
@@ -15,7 +15,10 @@
  */
 package com.zhuinden.simplestack;
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.Parcelable;
 import android.util.SparseArray;
 import android.view.View;
@@ -25,12 +28,14 @@ import com.zhuinden.statebundle.StateBundle;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -73,6 +78,44 @@ public class Backstack
         void clearStatesNotIn(@Nonnull Map<Object, SavedState> keyStateMap, @Nonnull StateChange stateChange);
     }
 
+    /**
+     * Estimates the size of a retained object, used to enforce the retained object budget.
+     */
+    public interface RetainedObjectSizeEstimator {
+        /**
+         * Returns the estimated size of the retained object in bytes.
+         *
+         * @param retainedObject the retained object
+         * @return the estimated size
+         */
+        int estimateSize(@Nonnull Object retainedObject);
+    }
+
+    /**
+     * Specifies that the retained objects are not limited by their estimated size.
+     */
+    public static final int NO_RETAINED_OBJECT_BUDGET = -1;
+
+    /**
+     * Specifies that the scopes are built at once before the state change is handled. See {@link Backstack#setTimeSlicedScopeBuilding(long)}.
+     */
+    public static final long NO_SCOPE_BUILDING_BUDGET = -1;
+
+    /**
+     * Receives the progress of building the scopes of the new top key, if scope building is time-sliced.
+     */
+    public interface ScopeBuildingListener {
+        /**
+         * Called after each slice of scope building until the scopes of the new top key are built, after which the state change is handed to the {@link StateChanger}.
+         * While the built scope count is less than the scope count, a placeholder can be shown.
+         *
+         * @param stateChange      the state change that is waiting for its scopes
+         * @param builtScopeCount  the number of scopes of the new top key that are built
+         * @param scopeCount       the number of scopes of the new top key that had to be built
+         */
+        void onScopeBuildingProgress(@Nonnull StateChange stateChange, int builtScopeCount, int scopeCount);
+    }
+
     private static final String HISTORY_TAG = "HISTORY";
     private static final String STATES_TAG = "STATES";
     private static final String SCOPES_TAG = "SCOPES";
@@ -96,18 +139,138 @@ public class Backstack
 
     private Object previousTopKeyWithAssociatedScope = null;
 
-    private final StateChanger managedStateChanger = new StateChanger() {
+    private class ManagedStateChanger
+            implements StateChanger, StateChanger.Interruptible {
         @Override
         public void handleStateChange(@Nonnull final StateChange stateChange, @Nonnull final Callback completionCallback) {
-            scopeManager.buildScopes(stateChange.getNewKeys()); // always create scopes before a state change occurs
-            stateChanger.handleStateChange(stateChange, completionCallback);
+            if(scopeBuildingFrameBudget == NO_SCOPE_BUILDING_BUDGET) {
+                scopeManager.buildScopes(stateChange.getNewKeys()); // always create scopes before a state change occurs
+                stateChanger.handleStateChange(stateChange, completionCallback);
+            } else {
+                scopeManager.prepareScopes(stateChange.getNewKeys()); // the scopes of the top key are created before the state change is handled
+                scopeBuilding = new ScopeBuilding(stateChange, completionCallback, scopeManager.countUnbuiltScopesOfTopKey());
+                scopeBuilding.run();
+            }
         }
-    };
+
+        @Override
+        public void onNewStateChangeEnqueued() {
+            if(stateChanger instanceof StateChanger.Interruptible) {
+                ((StateChanger.Interruptible) stateChanger).onNewStateChangeEnqueued();
+            }
+        }
+    }
+
+    private final StateChanger managedStateChanger = new ManagedStateChanger();
+
+    private class ScopeBuilding
+            implements Runnable {
+        private final StateChange stateChange;
+        private final StateChanger.Callback completionCallback;
+        private final int scopeCount;
+
+        private boolean isStateChangeHandled = false;
+        private boolean isScheduled = false;
+
+        ScopeBuilding(StateChange stateChange, StateChanger.Callback completionCallback, int scopeCount) {
+            this.stateChange = stateChange;
+            this.completionCallback = completionCallback;
+            this.scopeCount = scopeCount;
+        }
+
+        @Override
+        public void run() {
+            isScheduled = false;
+            if(scopeBuilding != this) {
+                return; // a new state change started, or the scopes were finalized
+            }
+
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(scopeBuildingFrameBudget);
+
+            if(!isStateChangeHandled) {
+                while(!scopeManager.isScopeOfTopKeyBuilt()) {
+                    scopeManager.buildNextScopeOfTopKey();
+                    if(System.nanoTime() >= deadline) {
+                        break; // at least one scope is built in each slice
+                    }
+                }
+
+                if(scopeBuildingListener != null) {
+                    scopeBuildingListener.onScopeBuildingProgress(stateChange, scopeCount - scopeManager.countUnbuiltScopesOfTopKey(), scopeCount);
+                }
+
+                if(!scopeManager.isScopeOfTopKeyBuilt()) {
+                    schedule();
+                    return;
+                }
+
+                if(!core.hasStateChanger()) {
+                    return; // continued when the state changer is reattached
+                }
+
+                isStateChangeHandled = true;
+                stateChanger.handleStateChange(stateChange, completionCallback);
+                if(scopeBuilding != this) {
+                    return;
+                }
+            }
+
+            if(scopeManager.isLazyScopeBuilding()) {
+                scopeBuilding = null; // the scopes of the other keys are built only when they are needed
+                return;
+            }
+
+            boolean hasPendingScopes = scopeManager.hasPendingScopes();
+            if(hasPendingScopes) {
+                while(hasPendingScopes && System.nanoTime() < deadline) {
+                    hasPendingScopes = scopeManager.buildNextPendingScope();
+                }
+                scopeManager.restoreScopeOrder();
+            }
+
+            if(hasPendingScopes) {
+                schedule();
+            } else {
+                scopeBuilding = null;
+            }
+        }
+
+        void schedule() {
+            if(!isScheduled) {
+                isScheduled = true;
+                scopeBuildingExecutor.execute(this);
+            }
+        }
+
+        void buildScopesOfTopKey() {
+            isStateChangeHandled = true; // the state change was completed before its scopes were built
+            while(!scopeManager.isScopeOfTopKeyBuilt()) {
+                scopeManager.buildNextScopeOfTopKey();
+            }
+            schedule();
+        }
+    }
+
+    private ScopeBuilding scopeBuilding = null;
+
+    private long scopeBuildingFrameBudget = NO_SCOPE_BUILDING_BUDGET;
+    private Executor scopeBuildingExecutor = null;
+    private ScopeBuildingListener scopeBuildingListener = null;
+
+    private void resumeScopeBuilding() {
+        if(scopeBuilding != null) {
+            scopeBuilding.schedule();
+        }
+    }
 
     // fix #220: this cannot be inside StateChanger.Callback, to ensure subsequent `stateChangeComplete()` call doesn't trigger recursive activation dispatch, only once
     private final CompletionListener managedStateChangerCompletionListener = new CompletionListener() {
         @Override
         public void stateChangeCompleted(@Nonnull StateChange stateChange) {
+            if(scopeBuilding != null && scopeBuilding.stateChange == stateChange && !scopeManager.isScopeOfTopKeyBuilt()) {
+                scopeBuilding.buildScopesOfTopKey(); // forced by `executePendingStateChange()`
+            }
+
             if(!isStateChangePending()) {
                 if(isStateChangerAttached) { // ensure enqueue behavior during activation dispatch, #215
                     core.removeStateChanger();
@@ -312,6 +475,195 @@ public class Backstack
         this.scopeManager.setGlobalServices(globalServiceFactory);
     }
 
+    /**
+     * Specifies the {@link Executor} that creates the services declared with {@link ServiceBinder#declareService(String, ServiceBinder.ServiceFactory, String...)}.
+     *
+     * Declared services that do not depend on each other are created concurrently, while the thread of the backstack waits for them to be added to the scope.
+     * By default, they are created on the thread of the backstack.
+     *
+     * Must be called before the initial state change. Call {@link Backstack#canSetScopeProviders()} to see if it's allowed.
+     *
+     * @param serviceExecutor the executor, for example a thread pool
+     */
+    public void setServiceExecutor(@Nonnull Executor serviceExecutor) {
+        if(!canSetScopeProviders()) {
+            throw new IllegalStateException("Service executor should be set before the initial state change!");
+        }
+        if(serviceExecutor == null) {
+            throw new IllegalArgumentException("The service executor cannot be null!");
+        }
+        this.scopeManager.setServiceExecutor(serviceExecutor);
+    }
+
+    /**
+     * Specifies the {@link Executor} that calls {@link ScopedServices.UnregisteredAsync#onServiceUnregisteredAsync()} for the services of destroyed scopes.
+     *
+     * The teardown of each destroyed scope is a single task executed after the scopes are cleaned up at the end of the state change, in which its services are torn down in reverse order.
+     * If the executor is serial (for example a single thread executor), then the scopes are also torn down in the order they were destroyed.
+     * By default, the teardown is executed on the thread of the backstack once the scopes are cleaned up.
+     *
+     * @param teardownExecutor the executor
+     */
+    public void setTeardownExecutor(@Nonnull Executor teardownExecutor) {
+        if(teardownExecutor == null) {
+            throw new IllegalArgumentException("The teardown executor cannot be null!");
+        }
+        this.scopeManager.setTeardownExecutor(teardownExecutor);
+    }
+
+    /**
+     * Sets if the scopes of keys that are not the top key should only be built when they are needed.
+     *
+     * When enabled, a state change only builds the global scope, the scopes of the new top key, and the scopes that will be activated (those of the top-most key with an associated scope, and its explicit parents).
+     * The scopes of the keys below it are built in the order of the history when they become the top, when they are looked up (including the lookups of a service that is not found in the scopes of the top key), or when {@link Backstack#buildPendingScopes()} is called.
+     * This makes setting a deep history (for example from a deep-link) only pay for the scopes of the screen that is shown.
+     *
+     * Must be called before the initial state change. Call {@link Backstack#canSetScopeProviders()} to see if it's allowed.
+     *
+     * @param isLazyScopeBuilding if the scopes of the keys below the top should be built lazily
+     */
+    public void setLazyScopeBuilding(boolean isLazyScopeBuilding) {
+        if(!canSetScopeProviders()) {
+            throw new IllegalStateException("Lazy scope building should be set before the initial state change!");
+        }
+        this.scopeManager.setLazyScopeBuilding(isLazyScopeBuilding);
+    }
+
+    /**
+     * Returns if the scopes of keys that are not the top key are built lazily. See {@link Backstack#setLazyScopeBuilding(boolean)}.
+     *
+     * @return if lazy scope building is enabled
+     */
+    public boolean isLazyScopeBuilding() {
+        return scopeManager.isLazyScopeBuilding();
+    }
+
+    /**
+     * Returns if there are keys in the history whose scopes are not yet built. See {@link Backstack#setLazyScopeBuilding(boolean)}.
+     *
+     * @return if there are pending scopes
+     */
+    public boolean hasPendingScopes() {
+        return scopeManager.hasPendingScopes();
+    }
+
+    /**
+     * Builds the scopes of the keys in the history that are not yet built, in the order of the history. Typically called when the main thread is idle.
+     */
+    public void buildPendingScopes() {
+        assertCorrectThread();
+
+        scopeManager.buildPendingScopes();
+    }
+
+    /**
+     * Builds the scopes of the next key in the history that is not yet built. This allows building the pending scopes one key at a time, for example one key per idle pass of the main thread.
+     *
+     * @return if there are pending scopes left
+     */
+    public boolean buildNextPendingScope() {
+        assertCorrectThread();
+
+        boolean hasPendingScopes = scopeManager.buildNextPendingScope();
+        scopeManager.restoreScopeOrder();
+        return hasPendingScopes;
+    }
+
+    /**
+     * Sets the time budget per frame for building the scopes of a state change, in which case the scopes are built in slices posted to the main thread's {@link Looper}.
+     *
+     * See {@link Backstack#setTimeSlicedScopeBuilding(long, Executor)}.
+     *
+     * @param frameBudgetMillis the time budget of a slice in milliseconds, or {@link Backstack#NO_SCOPE_BUILDING_BUDGET}
+     */
+    public void setTimeSlicedScopeBuilding(long frameBudgetMillis) {
+        setTimeSlicedScopeBuilding(frameBudgetMillis, new Executor() {
+            private final Handler handler = new Handler(Looper.getMainLooper());
+
+            @Override
+            public void execute(@Nonnull Runnable runnable) {
+                handler.post(runnable);
+            }
+        });
+    }
+
+    /**
+     * Sets the time budget per frame for building the scopes of a state change, in which case the scopes are built in slices executed by the provided executor.
+     *
+     * Instead of building all scopes before the state change is handled, each slice builds scopes (one scope at a time) until the budget is exceeded, and the next slice is executed by the executor.
+     * The state change is handed to the {@link StateChanger} only once the scopes of the new top key are built, along with the scopes that will be activated (those of the top-most key with an associated scope, and its explicit parents), and the progress is reported to the {@link ScopeBuildingListener}.
+     * The scopes of the other keys are built in the following slices (unless {@link Backstack#setLazyScopeBuilding(boolean)} is enabled), or earlier, if they are looked up.
+     *
+     * The executor must execute the slices on the thread of the backstack, after the current frame.
+     *
+     * Must be called before the initial state change. Call {@link Backstack#canSetScopeProviders()} to see if it's allowed.
+     *
+     * @param frameBudgetMillis the time budget of a slice in milliseconds, or {@link Backstack#NO_SCOPE_BUILDING_BUDGET}
+     * @param sliceExecutor     the executor that executes the slices
+     */
+    public void setTimeSlicedScopeBuilding(long frameBudgetMillis, @Nonnull Executor sliceExecutor) {
+        if(!canSetScopeProviders()) {
+            throw new IllegalStateException("Time-sliced scope building should be set before the initial state change!");
+        }
+        if(frameBudgetMillis <= 0 && frameBudgetMillis != NO_SCOPE_BUILDING_BUDGET) {
+            throw new IllegalArgumentException("The frame budget must be positive, or NO_SCOPE_BUILDING_BUDGET!");
+        }
+        if(sliceExecutor == null) {
+            throw new IllegalArgumentException("The slice executor cannot be null!");
+        }
+        this.scopeBuildingFrameBudget = frameBudgetMillis;
+        this.scopeBuildingExecutor = sliceExecutor;
+    }
+
+    /**
+     * Sets the listener that receives the progress of time-sliced scope building. See {@link Backstack#setTimeSlicedScopeBuilding(long, Executor)}.
+     *
+     * @param scopeBuildingListener the listener, or null
+     */
+    public void setScopeBuildingListener(@Nullable ScopeBuildingListener scopeBuildingListener) {
+        this.scopeBuildingListener = scopeBuildingListener;
+    }
+
+    /**
+     * Returns if the scopes of a state change are being built in slices, and the state change is not yet handed to the {@link StateChanger}.
+     *
+     * @return if the scopes of the top key are being built
+     */
+    public boolean isBuildingScopes() {
+        return scopeBuilding != null && !scopeBuilding.isStateChangeHandled;
+    }
+
+    private Backstack parentBackstack;
+
+    /**
+     * Sets the parent backstack, typically the backstack of the host of a nested backstack.
+     *
+     * If a service is not found by {@link Backstack#lookupService(String)} or {@link Backstack#lookupFromScope(String, String)} in this backstack, then it is looked up from the active scopes of the parent backstack (and its parents).
+     * This allows nested backstacks to share services registered once in the parent, without registering or persisting them again.
+     *
+     * @param parentBackstack the parent backstack, or null
+     */
+    public void setParentBackstack(@Nullable Backstack parentBackstack) {
+        Backstack backstack = parentBackstack;
+        while(backstack != null) {
+            if(backstack == this) {
+                throw new IllegalArgumentException("A backstack cannot be its own parent!");
+            }
+            backstack = backstack.parentBackstack;
+        }
+        this.parentBackstack = parentBackstack;
+    }
+
+    /**
+     * Returns the parent backstack set with {@link Backstack#setParentBackstack(Backstack)}.
+     *
+     * @return the parent backstack, or null
+     */
+    @Nullable
+    public Backstack getParentBackstack() {
+        return parentBackstack;
+    }
+
     NavigationCore core;
 
     Map<Object, SavedState> keyStateMap = new HashMap<>();
@@ -355,6 +707,7 @@ public class Backstack
 
             isStateChangerAttached = true;
             core.setStateChanger(managedStateChanger);
+            resumeScopeBuilding();
         }
     }
 
@@ -391,6 +744,7 @@ public class Backstack
         if(!core.hasStateChanger()) {
             isStateChangerAttached = true;
             core.setStateChanger(managedStateChanger, NavigationCore.REATTACH);
+            resumeScopeBuilding();
         }
     }
 
@@ -406,6 +760,8 @@ public class Backstack
             return;
         }
 
+        scopeBuilding = null;
+
         if(previousTopKeyWithAssociatedScope != null) {
             Set<String> scopesToDeactivate = new LinkedHashSet<>();
 
@@ -523,7 +879,7 @@ public class Backstack
      * @return whether the service exists in any active scopes
      */
     public boolean canFindService(@Nonnull String serviceTag) {
-        return scopeManager.canFindService(serviceTag);
+        return scopeManager.canFindService(serviceTag) || (parentBackstack != null && parentBackstack.canFindService(serviceTag));
     }
 
     /**
@@ -535,7 +891,7 @@ public class Backstack
      * @return whether the service exists in any scopes from the current scope or its parents
      */
     public boolean canFindFromScope(@Nonnull String scopeTag, @Nonnull String serviceTag) {
-        return scopeManager.canFindFromScope(scopeTag, serviceTag, ScopeLookupMode.ALL);
+        return canFindFromScope(scopeTag, serviceTag, ScopeLookupMode.ALL);
     }
 
     /**
@@ -548,7 +904,7 @@ public class Backstack
      * @return whether the service exists in any scopes from the current scope or its parents
      */
     public boolean canFindFromScope(@Nonnull String scopeTag, @Nonnull String serviceTag, @Nonnull ScopeLookupMode lookupMode) {
-        return scopeManager.canFindFromScope(scopeTag, serviceTag, lookupMode);
+        return scopeManager.canFindFromScope(scopeTag, serviceTag, lookupMode) || (parentBackstack != null && parentBackstack.canFindService(serviceTag));
     }
 
     /**
@@ -562,7 +918,22 @@ public class Backstack
      */
     @Nonnull
     public <T> T lookupService(@Nonnull String serviceTag) {
-        return scopeManager.lookupService(serviceTag);
+        if(parentBackstack == null) {
+            return scopeManager.lookupService(serviceTag);
+        }
+        Object service = scopeManager.findService(serviceTag);
+        if(service == ScopeManager.SERVICE_NOT_FOUND) {
+            if(parentBackstack.canFindService(serviceTag)) {
+                return parentBackstack.lookupService(serviceTag);
+            }
+            List<String> scopeTags = new ArrayList<>();
+            for(Backstack backstack = this; backstack != null; backstack = backstack.parentBackstack) {
+                scopeTags.addAll(backstack.scopeManager.getScopeTagsInTraversalOrder());
+            }
+            throw ScopeManager.createServiceNotFoundException(serviceTag, scopeTags);
+        }
+        //noinspection unchecked
+        return (T) service;
     }
 
     /**
@@ -591,7 +962,7 @@ public class Backstack
      */
     @Nonnull
     public <T> T lookupFromScope(String scopeTag, String serviceTag) {
-        return scopeManager.lookupFromScope(scopeTag, serviceTag, ScopeLookupMode.ALL);
+        return lookupFromScope(scopeTag, serviceTag, ScopeLookupMode.ALL);
     }
 
     /**
@@ -606,7 +977,18 @@ public class Backstack
      */
     @Nonnull
     public <T> T lookupFromScope(String scopeTag, String serviceTag, ScopeLookupMode lookupMode) {
-        return scopeManager.lookupFromScope(scopeTag, serviceTag, lookupMode);
+        if(parentBackstack == null) {
+            return scopeManager.lookupFromScope(scopeTag, serviceTag, lookupMode);
+        }
+        Object service = scopeManager.findFromScope(scopeTag, serviceTag, lookupMode);
+        if(service == ScopeManager.SERVICE_NOT_FOUND) {
+            if(parentBackstack.canFindService(serviceTag)) {
+                return parentBackstack.lookupService(serviceTag);
+            }
+            return scopeManager.lookupFromScope(scopeTag, serviceTag, lookupMode); // throws, mentioning the scope tag
+        }
+        //noinspection unchecked
+        return (T) service;
     }
 
     /**
@@ -629,8 +1011,7 @@ public class Backstack
 
     // ----- retained objects
 
-    private final Map<String, Object> retainedObjects = new LinkedHashMap<>();
-    private final StateBundle pendingRestoredRetainedObjectStates = new StateBundle();
+    private final RetainedObjectStore retainedObjectStore = new RetainedObjectStore();
 
     /**
      * Returns if a retained object is contained for a given tag.
@@ -641,7 +1022,7 @@ public class Backstack
     public boolean hasRetainedObject(@Nonnull String objectTag) {
         assertCorrectThread();
 
-        return retainedObjects.containsKey(objectTag);
+        return retainedObjectStore.has(objectTag);
     }
 
     /**
@@ -655,12 +1036,13 @@ public class Backstack
     public <T> T getRetainedObject(@Nonnull String objectTag) {
         assertCorrectThread();
 
-        if (!retainedObjects.containsKey(objectTag)) {
+        Object retainedObject = retainedObjectStore.get(objectTag);
+        if (retainedObject == null) {
             throw new IllegalArgumentException("Retained object with tag [" + objectTag + "] was not found.!");
         }
 
         //noinspection unchecked
-        return (T) retainedObjects.get(objectTag);
+        return (T) retainedObject;
     }
 
     /**
@@ -674,6 +1056,36 @@ public class Backstack
      * @param retainedObject the retained object
      */
     public void addRetainedObject(@Nonnull String objectTag, @Nonnull Object retainedObject) {
+        addRetainedObject(objectTag, retainedObject, RetentionTier.STRONG, null);
+    }
+
+    /**
+     * Add an object as a retained object with the given {@link RetentionTier}.
+     *
+     * @param objectTag      the object tag
+     * @param retainedObject the retained object
+     * @param retentionTier  the retention tier
+     * @see Backstack#addRetainedObject(String, Object, RetentionTier, RetainedObjectSizeEstimator)
+     */
+    public void addRetainedObject(@Nonnull String objectTag, @Nonnull Object retainedObject, @Nonnull RetentionTier retentionTier) {
+        addRetainedObject(objectTag, retainedObject, retentionTier, null);
+    }
+
+    /**
+     * Add an object as a retained object with the given {@link RetentionTier}. This will make it persist across configuration changes.
+     * <p>
+     * Objects that are not {@link RetentionTier#STRONG} are evicted when the backstack is asked to trim memory, or when the retained object budget is exceeded, in least recently used order.
+     * If the evicted object implements Bundleable, then its state is kept, and restored when an object is re-added with the same tag.
+     * <p>
+     * Throws if an object is already found for that given object tag.
+     *
+     * @param objectTag      the object tag
+     * @param retainedObject the retained object
+     * @param retentionTier  the retention tier
+     * @param sizeEstimator  the size estimator used for the retained object budget, if null then the object is not counted
+     * @see Backstack#setRetainedObjectBudget(int)
+     */
+    public void addRetainedObject(@Nonnull String objectTag, @Nonnull Object retainedObject, @Nonnull RetentionTier retentionTier, @Nullable RetainedObjectSizeEstimator sizeEstimator) {
         //noinspection ConstantConditions
         if (objectTag == null) {
             throw new NullPointerException("objectTag cannot be null!");
@@ -684,22 +1096,14 @@ public class Backstack
             throw new NullPointerException("retainedObject cannot be null!");
         }
 
-        assertCorrectThread();
-
-        if (retainedObjects.containsKey(objectTag)) {
-            throw new IllegalArgumentException("A retained object is already added with the object tag [" + objectTag + "]");
+        //noinspection ConstantConditions
+        if (retentionTier == null) {
+            throw new NullPointerException("retentionTier cannot be null!");
         }
 
-        if (pendingRestoredRetainedObjectStates.containsKey(objectTag)) {
-            if (!(retainedObject instanceof Bundleable)) {
-                throw new IllegalStateException("State restoration mismatch: expected [" + objectTag + "] to be restored, but was not actually Bundleable anymore.");
-            }
-
-            ((Bundleable) retainedObject).fromBundle(pendingRestoredRetainedObjectStates.getBundle(objectTag));
-            pendingRestoredRetainedObjectStates.remove(objectTag);
-        }
+        assertCorrectThread();
 
-        retainedObjects.put(objectTag, retainedObject);
+        retainedObjectStore.add(objectTag, retainedObject, retentionTier, sizeEstimator);
     }
 
     /**
@@ -718,9 +1122,61 @@ public class Backstack
 
         assertCorrectThread();
 
-        pendingRestoredRetainedObjectStates.remove(objectTag);
         //noinspection unchecked
-        return (T) retainedObjects.remove(objectTag);
+        return (T) retainedObjectStore.remove(objectTag);
+    }
+
+    /**
+     * Sets the maximum estimated size of the retained objects. When exceeded, the least recently used retained objects that are not {@link RetentionTier#STRONG} are evicted.
+     * <p>
+     * Only objects added with a {@link RetainedObjectSizeEstimator} are counted.
+     *
+     * @param maxRetainedBytes the budget in bytes, or {@link Backstack#NO_RETAINED_OBJECT_BUDGET}
+     */
+    public void setRetainedObjectBudget(int maxRetainedBytes) {
+        if (maxRetainedBytes < 0 && maxRetainedBytes != NO_RETAINED_OBJECT_BUDGET) {
+            throw new IllegalArgumentException("The retained object budget must be either positive, or NO_RETAINED_OBJECT_BUDGET!");
+        }
+
+        assertCorrectThread();
+
+        retainedObjectStore.setMaxRetainedBytes(maxRetainedBytes);
+    }
+
+    /**
+     * Returns the estimated size of the retained objects that were added with a {@link RetainedObjectSizeEstimator}.
+     *
+     * @return the estimated size of the retained objects
+     */
+    public int getRetainedObjectBytes() {
+        assertCorrectThread();
+
+        return retainedObjectStore.getRetainedBytes();
+    }
+
+    // ----- memory trimming
+
+    /**
+     * Releases memory based on the memory trim level received from {@link ComponentCallbacks2#onTrimMemory(int)}.
+     * <p>
+     * If the {@link StateClearStrategy} is a {@link LruStateClearStrategy}, then its retained off-stack states are trimmed.
+     * <p>
+     * From {@link ComponentCallbacks2#TRIM_MEMORY_RUNNING_LOW}, services that implement {@link ScopedServices.Releasable} in scopes that are not active are released,
+     * and retained objects that are not {@link RetentionTier#STRONG} are evicted.
+     *
+     * @param level the trim memory level
+     */
+    public void onTrimMemory(int level) {
+        assertCorrectThread();
+
+        if(stateClearStrategy instanceof LruStateClearStrategy) {
+            ((LruStateClearStrategy) stateClearStrategy).onTrimMemory(level);
+        }
+
+        if(level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW && level != ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            scopeManager.releaseInactiveServices();
+            retainedObjectStore.evictAll();
+        }
     }
 
     // ----- viewstate persistence
@@ -729,6 +1185,8 @@ public class Backstack
      * Provides the means to save the provided view's hierarchy state
      * and its optional StateBundle via {@link Bundleable} into a {@link SavedState}.
      *
+     * If the view implements {@link DirtyTrackingView} and its state has not changed since it was last persisted, the previously saved state is kept.
+     *
      * @param view the view that belongs to a certain key
      */
     public void persistViewToState(@Nullable View view) {
@@ -739,15 +1197,22 @@ public class Backstack
             if (key == null) {
                 throw new IllegalArgumentException("The view [" + view + "] contained no key in its context hierarchy. The view or its parent hierarchy should be inflated by a layout inflater from `stateChange.createContext(baseContext, key)`, or a KeyContextWrapper.");
             }
+            SavedState previousSavedState = getSavedState(key);
+            if (view instanceof DirtyTrackingView && previousSavedState.isViewStatePersisted() && !((DirtyTrackingView) view).isStateDirty()) {
+                return; // nothing changed since the last persist, the previous state can be reused
+            }
             SparseArray<Parcelable> viewHierarchyState = new SparseArray<>();
             view.saveHierarchyState(viewHierarchyState);
             StateBundle bundle = null;
             if (view instanceof Bundleable) {
                 bundle = ((Bundleable) view).toBundle();
             }
-            SavedState previousSavedState = getSavedState(key);
             previousSavedState.setViewHierarchyState(viewHierarchyState);
             previousSavedState.setViewBundle(bundle);
+            previousSavedState.setViewStatePersisted(true);
+            if (view instanceof DirtyTrackingView) {
+                ((DirtyTrackingView) view).clearStateDirty();
+            }
         }
     }
 
@@ -768,6 +1233,9 @@ public class Backstack
         if (view instanceof Bundleable) {
             ((Bundleable) view).fromBundle(savedState.getViewBundle());
         }
+        if (view instanceof DirtyTrackingView && savedState.isViewStatePersisted()) {
+            ((DirtyTrackingView) view).clearStateDirty();
+        }
     }
 
     /**
@@ -859,20 +1327,7 @@ public class Backstack
 
             StateBundle retainedStates = stateBundle.getBundle(RETAINED_OBJECT_STATES_TAG);
             if (retainedStates != null) {
-                pendingRestoredRetainedObjectStates.putAll(retainedStates);
-
-                for (Map.Entry<String, Object> retainedEntry : retainedObjects.entrySet()) {
-                    String objectTag = retainedEntry.getKey();
-                    Object retainedObject = retainedEntry.getValue();
-
-                    if (pendingRestoredRetainedObjectStates.containsKey(objectTag)) {
-                        if (!(retainedObject instanceof Bundleable)) {
-                            throw new IllegalStateException("State restoration mismatch: expected [" + objectTag + "] to be restored, but was not actually Bundleable anymore.");
-                        }
-                        ((Bundleable) retainedObject).fromBundle(pendingRestoredRetainedObjectStates.getBundle(objectTag));
-                        pendingRestoredRetainedObjectStates.remove(objectTag);
-                    }
-                }
+                retainedObjectStore.restoreStates(retainedStates);
             }
         }
     }
@@ -901,14 +1356,19 @@ public class Backstack
         assertCorrectThread();
 
         StateBundle stateBundle = new StateBundle();
+        History<Object> keys = getHistory();
         ArrayList<Parcelable> history = new ArrayList<>();
-        for (Object key : getHistory()) {
+        for (Object key : keys) {
             history.add(keyParceler.toParcelable(key));
         }
         stateBundle.putParcelableArrayList(getHistoryTag(), history);
 
+        Set<Object> keysInHistory = new HashSet<>(keys);
         ArrayList<ParcelledState> parcelledStates = new ArrayList<>();
         for (SavedState savedState : keyStateMap.values()) {
+            if(!keysInHistory.contains(savedState.getKey())) {
+                continue; // states retained by the state clear strategy for removed keys are not restored, so they are not persisted
+            }
             ParcelledState parcelledState = new ParcelledState();
             parcelledState.parcelableKey = keyParceler.toParcelable(savedState.getKey());
             parcelledState.viewHierarchyState = savedState.getViewHierarchyState();
@@ -920,18 +1380,7 @@ public class Backstack
 
         stateBundle.putParcelable(getScopesTag(), scopeManager.saveStates());
 
-        StateBundle retainedObjectStates = new StateBundle();
-        for (Map.Entry<String, Object> entry : retainedObjects.entrySet()) {
-            final String objectTag = entry.getKey();
-            final Object retainedObject = entry.getValue();
-
-            if (retainedObject instanceof Bundleable) {
-                StateBundle retainedBundle = ((Bundleable) retainedObject).toBundle();
-                retainedObjectStates.putParcelable(objectTag, retainedBundle);
-            }
-        }
-
-        stateBundle.putParcelable(getRetainedObjectStatesTag(), retainedObjectStates);
+        stateBundle.putParcelable(getRetainedObjectStatesTag(), retainedObjectStore.saveStates());
 
         return stateBundle;
     }
@@ -1139,17 +1588,9 @@ public class Backstack
             throw new IllegalArgumentException("Cannot exit scope [" + scopeTag + "] as it does not exist.");
         }
 
-        Object candidateKey = keys.get(0);
-
-        for(Object key: keys) {
-            if(scopeManager.canFindScope(key, scopeTag, ScopeLookupMode.EXPLICIT)) {
-                break;
-            }
+        int firstKeyIndexInScope = scopeManager.findFirstKeyIndexInScope(keys, scopeTag);
 
-            candidateKey = key;
-        }
-
-        core.setHistory(History.builderFrom(keys).removeUntil(candidateKey).build(), direction);
+        core.setHistory(History.builderFrom(keys.subList(0, findExitScopeIndex(keys, firstKeyIndexInScope) + 1)).build(), direction);
     }
 
     /**
@@ -1186,19 +1627,11 @@ public class Backstack
             throw new IllegalArgumentException("Cannot exit scope [" + scopeTag + "] as it does not exist.");
         }
 
-        Object candidateKey = keys.get(0);
-
-        for(Object key: keys) {
-            if(scopeManager.canFindScope(key, scopeTag, ScopeLookupMode.EXPLICIT)) {
-                break;
-            }
-
-            candidateKey = key;
-        }
+        int firstKeyIndexInScope = scopeManager.findFirstKeyIndexInScope(keys, scopeTag);
 
-        History.Builder builder = History.builderFrom(keys).removeUntil(candidateKey);
+        History.Builder builder = History.builderFrom(keys.subList(0, findExitScopeIndex(keys, firstKeyIndexInScope) + 1));
 
-        if(scopeManager.canFindScope(builder.get(0), scopeTag, ScopeLookupMode.EXPLICIT)) { // root had the scope
+        if(firstKeyIndexInScope == 0) { // root had the scope
             builder.removeAt(0);
         }
 
@@ -1211,6 +1644,13 @@ public class Backstack
         core.setHistory(builder.build(), direction);
     }
 
+    private static int findExitScopeIndex(List<Object> keys, int firstKeyIndexInScope) {
+        if(firstKeyIndexInScope == -1) {
+            return keys.size() - 1; // no key is within the scope
+        }
+        return Math.max(0, firstKeyIndexInScope - 1); // the root is kept even if it is within the scope
+    }
+
     /**
      * Goes "up" once to the provided chain of parents.
      * If the chain of parents is found as previous elements, then it works as back navigation to that chain, removing all other elements on top of it (unless specified otherwise).
@@ -1289,6 +1729,24 @@ public class Backstack
         core.setHistory(newHistory, direction);
     }
 
+    /**
+     * Returns an immutable snapshot of the navigation state after the last completed state change.
+     *
+     * Unlike {@link Backstack#getHistory()}, this can be called from any thread, without locks or copies, as a new snapshot is published once per completed state change.
+     * Before the first state change is completed, the history of the snapshot is empty.
+     *
+     * @return the navigation snapshot
+     */
+    @Nonnull
+    public NavigationSnapshot getNavigationSnapshot() {
+        NavigationCore core = this.core; // can be read from any thread
+        if(core == null) {
+            return NavigationSnapshot.EMPTY;
+        }
+        NavigationSnapshot navigationSnapshot = core.getNavigationSnapshot();
+        return navigationSnapshot != null ? navigationSnapshot : NavigationSnapshot.EMPTY; // the core is not safely published to other threads
+    }
+
     /**
      * Returns the root (first) element of this history, or null if the history is empty.
      *
@@ -439,6 +439,16 @@ public class BackstackDelegate {
         activity = null;
     }
 
+    /**
+     * The onTrimMemory() delegate for the Activity.
+     * It allows the {@link Backstack} to release memory, see {@link Backstack#onTrimMemory(int)}.
+     *
+     * @param level the trim memory level
+     */
+    public void onTrimMemory(int level) {
+        getBackstack().onTrimMemory(level);
+    }
+
     // ----- viewstate persistence
 
     /**
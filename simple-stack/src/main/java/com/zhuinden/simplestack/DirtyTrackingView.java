@@ -0,0 +1,40 @@
+/*
+ * Copyright 2021 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.simplestack;
+
+import android.view.View;
+
+/**
+ * Specifies that a view tracks whether its state has changed since it was last persisted.
+ *
+ * If the view persisted with {@link Backstack#persistViewToState(View)} implements this, and its state has not changed since the last time it was persisted or restored,
+ * then the previously saved view hierarchy state (and {@link Bundleable} state) is kept, instead of saving the hierarchy again.
+ *
+ * The view should mark itself dirty on any change that affects its saved state (for example, user input or scrolling).
+ */
+public interface DirtyTrackingView {
+    /**
+     * Returns whether the state of the view has changed since it was last persisted or restored.
+     *
+     * @return whether the state is dirty
+     */
+    boolean isStateDirty();
+
+    /**
+     * Called when the state of the view has been persisted or restored, so the view should no longer be considered dirty.
+     */
+    void clearStateDirty();
+}
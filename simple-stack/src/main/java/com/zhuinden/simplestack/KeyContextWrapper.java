@@ -21,6 +21,7 @@ import android.content.ContextWrapper;
 import android.view.LayoutInflater;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 /**
  * ContextWrapper for inflating views, containing the key inside it.
@@ -34,6 +35,8 @@ public class KeyContextWrapper
 
     final Object key;
 
+    Backstack backstack;
+
     public KeyContextWrapper(Context base, @Nonnull Object key) {
         super(base);
         if(key == null) {
@@ -42,6 +45,18 @@ public class KeyContextWrapper
         this.key = key;
     }
 
+    /**
+     * Returns the backstack that created this context, if it was created with {@link StateChange#createContext(Context, Object)}.
+     *
+     * This allows resolving the backstack from the context without looking it up through the base contexts.
+     *
+     * @return the backstack, or null
+     */
+    @Nullable
+    public Backstack getBackstack() {
+        return backstack;
+    }
+
     @Override
     public Object getSystemService(String name) {
         if(Context.LAYOUT_INFLATER_SERVICE.equals(name)) {
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2021 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.simplestack;
+
+import android.content.ComponentCallbacks2;
+import android.os.Parcel;
+import android.util.SparseArray;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A state clear strategy that retains the {@link SavedState} of the most recently removed keys, instead of clearing them immediately.
+ *
+ * If a retained key is navigated to again, its state is still in the backstack, so it is restored as if it had never left.
+ *
+ * The retained states are limited by count, and optionally by an estimated byte budget. The least recently removed states are evicted first.
+ *
+ * The retained states can be released with {@link LruStateClearStrategy#onTrimMemory(int)} or {@link LruStateClearStrategy#clearRetainedStates()}.
+ *
+ * The retained states are kept only in memory: they are not persisted by {@link Backstack#toBundle()}, so they do not survive process death.
+ */
+public class LruStateClearStrategy
+        implements Backstack.StateClearStrategy {
+    /**
+     * Estimates the size of a {@link SavedState}, used to enforce the byte budget.
+     */
+    public interface SizeEstimator {
+        /**
+         * Returns the estimated size of the saved state in bytes.
+         *
+         * @param savedState the saved state
+         * @return the estimated size
+         */
+        int estimateSize(@Nonnull SavedState savedState);
+    }
+
+    private static class ParcelSizeEstimator
+            implements SizeEstimator {
+        @Override
+        public int estimateSize(@Nonnull SavedState savedState) {
+            Parcel parcel = Parcel.obtain();
+            try {
+                //noinspection unchecked
+                parcel.writeSparseArray((SparseArray) savedState.getViewHierarchyState());
+                parcel.writeParcelable(savedState.getBundle(), 0);
+                parcel.writeParcelable(savedState.getViewBundle(), 0);
+                return parcel.dataSize();
+            } finally {
+                parcel.recycle();
+            }
+        }
+    }
+
+    /**
+     * Specifies that the retained states are not limited by their estimated size.
+     */
+    public static final int NO_BYTE_LIMIT = -1;
+
+    private final int maxRetainedStates;
+    private final int maxRetainedBytes;
+    private final SizeEstimator sizeEstimator;
+
+    private final LinkedHashMap<Object, Integer> retainedKeys = new LinkedHashMap<>(); // key -> estimated size, in order of removal
+    private int retainedBytes = 0;
+
+    private Map<Object, SavedState> keyStateMap;
+
+    /**
+     * Creates a strategy that retains at most the given number of removed states.
+     *
+     * @param maxRetainedStates the maximum number of removed states to retain
+     */
+    public LruStateClearStrategy(int maxRetainedStates) {
+        this(maxRetainedStates, NO_BYTE_LIMIT, null);
+    }
+
+    /**
+     * Creates a strategy that retains at most the given number of removed states, and at most the given number of bytes, estimated by parcelling the states.
+     *
+     * @param maxRetainedStates the maximum number of removed states to retain
+     * @param maxRetainedBytes  the maximum estimated size of retained states, or {@link LruStateClearStrategy#NO_BYTE_LIMIT}
+     */
+    public LruStateClearStrategy(int maxRetainedStates, int maxRetainedBytes) {
+        this(maxRetainedStates, maxRetainedBytes, null);
+    }
+
+    /**
+     * Creates a strategy that retains at most the given number of removed states, and at most the given number of bytes, estimated by the provided estimator.
+     *
+     * @param maxRetainedStates the maximum number of removed states to retain
+     * @param maxRetainedBytes  the maximum estimated size of retained states, or {@link LruStateClearStrategy#NO_BYTE_LIMIT}
+     * @param sizeEstimator     the size estimator, if null then the states are parcelled to estimate their size
+     */
+    public LruStateClearStrategy(int maxRetainedStates, int maxRetainedBytes, @Nullable SizeEstimator sizeEstimator) {
+        if(maxRetainedStates < 0) {
+            throw new IllegalArgumentException("The maximum number of retained states cannot be negative!");
+        }
+        if(maxRetainedBytes < 0 && maxRetainedBytes != NO_BYTE_LIMIT) {
+            throw new IllegalArgumentException("The maximum retained bytes must be either positive, or NO_BYTE_LIMIT!");
+        }
+        this.maxRetainedStates = maxRetainedStates;
+        this.maxRetainedBytes = maxRetainedBytes;
+        this.sizeEstimator = sizeEstimator != null ? sizeEstimator : new ParcelSizeEstimator();
+    }
+
+    @Override
+    public void clearStatesNotIn(@Nonnull Map<Object, SavedState> keyStateMap, @Nonnull StateChange stateChange) {
+        this.keyStateMap = keyStateMap;
+
+        Set<Object> newKeys = new HashSet<Object>(stateChange.getNewKeys());
+
+        // keys that came back are no longer retained, their state is active again
+        Iterator<Map.Entry<Object, Integer>> retainedIterator = retainedKeys.entrySet().iterator();
+        while(retainedIterator.hasNext()) {
+            Map.Entry<Object, Integer> entry = retainedIterator.next();
+            Object key = entry.getKey();
+            if(newKeys.contains(key) || !keyStateMap.containsKey(key)) {
+                retainedBytes -= entry.getValue();
+                retainedIterator.remove();
+            }
+        }
+
+        // the top-most removed key is the most recently removed one
+        List<Object> previousKeys = stateChange.getPreviousKeys();
+        List<Object> removedKeys = new ArrayList<>();
+        for(Object key : keyStateMap.keySet()) {
+            if(!newKeys.contains(key) && !retainedKeys.containsKey(key) && !previousKeys.contains(key)) {
+                removedKeys.add(key);
+            }
+        }
+        for(Object key : previousKeys) {
+            if(!newKeys.contains(key) && !retainedKeys.containsKey(key) && keyStateMap.containsKey(key)) {
+                removedKeys.add(key);
+            }
+        }
+
+        for(Object key : removedKeys) {
+            int size = maxRetainedBytes == NO_BYTE_LIMIT ? 0 : sizeEstimator.estimateSize(keyStateMap.get(key));
+            retainedKeys.put(key, size);
+            retainedBytes += size;
+        }
+
+        trimToSize(maxRetainedStates);
+    }
+
+    /**
+     * Evicts the least recently removed states until at most the given number of states is retained (and the byte budget is satisfied).
+     *
+     * @param maxStates the maximum number of retained states to keep
+     */
+    public void trimToSize(int maxStates) {
+        Iterator<Map.Entry<Object, Integer>> iterator = retainedKeys.entrySet().iterator();
+        while(iterator.hasNext() && (retainedKeys.size() > maxStates || (maxRetainedBytes != NO_BYTE_LIMIT && retainedBytes > maxRetainedBytes))) {
+            Map.Entry<Object, Integer> entry = iterator.next();
+            retainedBytes -= entry.getValue();
+            if(keyStateMap != null) {
+                keyStateMap.remove(entry.getKey());
+            }
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Clears all retained states of keys that are no longer in the history.
+     */
+    public void clearRetainedStates() {
+        trimToSize(0);
+    }
+
+    /**
+     * Releases retained states based on the memory trim level received from {@link ComponentCallbacks2#onTrimMemory(int)}.
+     *
+     * Critical levels clear all retained states, while moderate levels halve them.
+     *
+     * @param level the trim memory level
+     */
+    public void onTrimMemory(int level) {
+        if(level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            clearRetainedStates();
+        } else if(level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            trimToSize(retainedKeys.size() / 2);
+        }
+    }
+
+    /**
+     * Returns the number of states currently retained for keys that are no longer in the history.
+     *
+     * @return the number of retained states
+     */
+    public int getRetainedStateCount() {
+        return retainedKeys.size();
+    }
+
+    /**
+     * Returns the estimated size of the retained states. If there is no byte limit, then sizes are not estimated, and this returns 0.
+     *
+     * @return the estimated size of retained states
+     */
+    public int getRetainedBytes() {
+        return retainedBytes;
+    }
+}
@@ -0,0 +1,617 @@
+/*
+ * Copyright 2021 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.simplestack;
+
+import android.content.ComponentCallbacks2;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.zhuinden.statebundle.StateBundle;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Manages multiple {@link Backstack}s identified by a stack identifier (for example, the tabs of a bottom navigation), of which one is selected at a time.
+ *
+ * The backstacks are created lazily: a stack is only registered with {@link Multistack#add(String, List)}, and its {@link Backstack} is created (and its scopes are built) when it is first selected, or accessed with {@link Multistack#get(String)}.
+ *
+ * Only the selected stack has the {@link StateChanger} attached. The state of each stack is persisted separately, and the state of stacks that were not created since restoration is kept as is.
+ *
+ * Stacks that are not selected can be hibernated, either explicitly with {@link Multistack#hibernate(String)}, after being deselected for the time set with {@link Multistack#setHibernationIdleTime(long)}, or by {@link Multistack#onTrimMemory(int)}.
+ * A hibernated stack is persisted with {@link Backstack#toBundle()}, its scopes are finalized, and its backstack is released. It is restored when it is selected or accessed again.
+ */
+public class Multistack
+        implements Bundleable {
+    /**
+     * Configures a newly created {@link Backstack} before it is set up, for example with {@link Backstack#setScopedServices(ScopedServices)}.
+     */
+    public interface BackstackInitializer {
+        /**
+         * Called when the backstack of a stack is created, before {@link Backstack#setup(List)} is called.
+         *
+         * @param identifier the stack identifier
+         * @param backstack  the backstack
+         */
+        void initializeBackstack(@Nonnull String identifier, @Nonnull Backstack backstack);
+    }
+
+    /**
+     * Receives the time spent hibernating and rehydrating stacks, which can be used to tune the hibernation idle time.
+     */
+    public interface HibernationListener {
+        /**
+         * Called when a stack is hibernated.
+         *
+         * @param identifier the stack identifier
+         * @param nanos      the time spent persisting the stack and finalizing its scopes
+         */
+        void onStackHibernated(@Nonnull String identifier, long nanos);
+
+        /**
+         * Called when a hibernated stack is rehydrated.
+         *
+         * @param identifier the stack identifier
+         * @param nanos      the time spent restoring the stack, including building its scopes if the state changer was set
+         */
+        void onStackRehydrated(@Nonnull String identifier, long nanos);
+    }
+
+    /**
+     * Schedules the hibernation of the stacks that are deselected, after the hibernation idle time.
+     */
+    public interface HibernationScheduler {
+        /**
+         * Schedules the runnable to be executed on the thread of the multistack after the given delay.
+         *
+         * @param runnable    the runnable
+         * @param delayMillis the delay in milliseconds
+         */
+        void schedule(@Nonnull Runnable runnable, long delayMillis);
+
+        /**
+         * Cancels the runnable if it is scheduled.
+         *
+         * @param runnable the runnable
+         */
+        void cancel(@Nonnull Runnable runnable);
+    }
+
+    private static class MainThreadHibernationScheduler
+            implements HibernationScheduler {
+        private Handler handler; // created only when it is needed
+
+        @Override
+        public void schedule(@Nonnull Runnable runnable, long delayMillis) {
+            if(handler == null) {
+                handler = new Handler(Looper.getMainLooper());
+            }
+            handler.postDelayed(runnable, delayMillis);
+        }
+
+        @Override
+        public void cancel(@Nonnull Runnable runnable) {
+            if(handler != null) {
+                handler.removeCallbacks(runnable);
+            }
+        }
+    }
+
+    /**
+     * Specifies that stacks are not hibernated after being deselected for a given time.
+     */
+    public static final long NO_HIBERNATION = -1;
+
+    private static class Stack {
+        private final String identifier;
+        private final List<?> initialKeys;
+
+        private Backstack backstack;
+        private StateBundle pendingState;
+        private boolean isStateChangerSet = false;
+        private boolean isHibernated = false;
+        private long deselectedAtNanos = 0;
+        private Runnable hibernationCheck;
+
+        Stack(String identifier, List<?> initialKeys) {
+            this.identifier = identifier;
+            this.initialKeys = initialKeys;
+        }
+    }
+
+    private static final String SELECTED_STACK_TAG = "MULTISTACK_SELECTED_STACK";
+    private static final String STACK_IDENTIFIERS_TAG = "MULTISTACK_STACK_IDENTIFIERS";
+    private static final String STACK_STATE_PREFIX = "MULTISTACK_STACK_";
+
+    private final BackstackInitializer backstackInitializer;
+
+    private final Map<String, Stack> stacks = new LinkedHashMap<>();
+    private String selectedIdentifier;
+
+    private StateChanger stateChanger;
+    private boolean isStateChangerDetached = false;
+
+    private long hibernationIdleTimeNanos = NO_HIBERNATION;
+    private HibernationScheduler hibernationScheduler = new MainThreadHibernationScheduler();
+    private HibernationListener hibernationListener;
+
+    /**
+     * Creates a multistack, whose backstacks are created with default configuration.
+     */
+    public Multistack() {
+        this(null);
+    }
+
+    /**
+     * Creates a multistack, whose backstacks are configured by the provided initializer when they are created.
+     *
+     * @param backstackInitializer the backstack initializer
+     */
+    public Multistack(@Nullable BackstackInitializer backstackInitializer) {
+        this.backstackInitializer = backstackInitializer;
+    }
+
+    /**
+     * Registers a stack. Its backstack is not created until it is needed.
+     *
+     * The first added stack is selected by default.
+     *
+     * @param identifier  the stack identifier
+     * @param initialKeys the initial keys of the stack
+     */
+    public void add(@Nonnull String identifier, @Nonnull List<?> initialKeys) {
+        if(identifier == null) {
+            throw new NullPointerException("identifier cannot be null!");
+        }
+        if(initialKeys == null || initialKeys.isEmpty()) {
+            throw new IllegalArgumentException("Initial keys cannot be null or empty!");
+        }
+        if(stacks.containsKey(identifier)) {
+            throw new IllegalArgumentException("The identifier [" + identifier + "] is already registered to the multistack!");
+        }
+        final Stack stack = new Stack(identifier, new ArrayList<>(initialKeys));
+        stack.hibernationCheck = new Runnable() {
+            @Override
+            public void run() {
+                if(!stack.identifier.equals(selectedIdentifier)) {
+                    hibernate(stack); // the stack was not reselected during the hibernation idle time
+                }
+            }
+        };
+        stacks.put(identifier, stack);
+        if(selectedIdentifier == null) {
+            selectedIdentifier = identifier;
+        }
+    }
+
+    /**
+     * Returns whether a stack is registered with the given identifier.
+     *
+     * @param identifier the stack identifier
+     * @return whether the stack exists
+     */
+    public boolean has(@Nonnull String identifier) {
+        return stacks.containsKey(identifier);
+    }
+
+    /**
+     * Returns whether the backstack of the given stack has been created.
+     *
+     * @param identifier the stack identifier
+     * @return whether the backstack is created
+     */
+    public boolean isCreated(@Nonnull String identifier) {
+        return getStack(identifier).backstack != null;
+    }
+
+    /**
+     * Returns the backstack of the given stack, creating it if it was not yet created.
+     *
+     * @param identifier the stack identifier
+     * @return the backstack
+     */
+    @Nonnull
+    public Backstack get(@Nonnull String identifier) {
+        return get(getStack(identifier));
+    }
+
+    private Backstack get(Stack stack) {
+        if(stack.backstack == null) {
+            long startNanos = System.nanoTime();
+            createBackstack(stack);
+            notifyIfRehydrated(stack, startNanos);
+        }
+        return stack.backstack;
+    }
+
+    private void createBackstack(Stack stack) {
+        if(stack.backstack == null) {
+            Backstack backstack = new Backstack();
+            if(backstackInitializer != null) {
+                backstackInitializer.initializeBackstack(stack.identifier, backstack);
+            }
+            backstack.setup(stack.initialKeys);
+            if(stack.pendingState != null) {
+                backstack.fromBundle(stack.pendingState);
+                stack.pendingState = null;
+            }
+            stack.backstack = backstack;
+            stack.deselectedAtNanos = System.nanoTime();
+        }
+    }
+
+    private void notifyIfRehydrated(Stack stack, long startNanos) {
+        if(stack.isHibernated) {
+            stack.isHibernated = false;
+            if(hibernationListener != null) {
+                hibernationListener.onStackRehydrated(stack.identifier, System.nanoTime() - startNanos);
+            }
+        }
+    }
+
+    /**
+     * Returns the identifiers of the registered stacks, in order of registration.
+     *
+     * @return the stack identifiers
+     */
+    @Nonnull
+    public List<String> getStackIdentifiers() {
+        return Collections.unmodifiableList(new ArrayList<>(stacks.keySet()));
+    }
+
+    /**
+     * Returns the identifier of the selected stack.
+     *
+     * @return the identifier of the selected stack
+     */
+    @Nonnull
+    public String getSelectedStackIdentifier() {
+        checkStacks();
+        return selectedIdentifier;
+    }
+
+    /**
+     * Returns the backstack of the selected stack, creating it if it was not yet created.
+     *
+     * @return the selected backstack
+     */
+    @Nonnull
+    public Backstack getSelectedStack() {
+        checkStacks();
+        return get(selectedIdentifier);
+    }
+
+    /**
+     * Selects the given stack. The state changer is detached from the previously selected stack, and is set to the newly selected stack.
+     *
+     * @param identifier the stack identifier
+     */
+    public void setSelectedStack(@Nonnull String identifier) {
+        Stack stack = getStack(identifier);
+        if(identifier.equals(selectedIdentifier)) {
+            return;
+        }
+        Stack previousStack = stacks.get(selectedIdentifier);
+        if(previousStack.backstack != null) {
+            previousStack.backstack.detachStateChanger();
+            previousStack.isStateChangerSet = false;
+        }
+        previousStack.deselectedAtNanos = System.nanoTime();
+        hibernationScheduler.cancel(stack.hibernationCheck);
+        if(hibernationIdleTimeNanos > 0 && previousStack.backstack != null) {
+            hibernationScheduler.schedule(previousStack.hibernationCheck, TimeUnit.NANOSECONDS.toMillis(hibernationIdleTimeNanos));
+        }
+        selectedIdentifier = identifier;
+        if(stateChanger != null && !isStateChangerDetached) {
+            setStateChangerOf(stack);
+        }
+        hibernateIdleStacks();
+    }
+
+    /**
+     * Sets the time after which a stack that is not selected is hibernated, scheduled on the main thread's {@link Looper}.
+     *
+     * See {@link Multistack#setHibernationIdleTime(long, HibernationScheduler)}.
+     *
+     * @param hibernationIdleTimeMillis the idle time in milliseconds, or {@link Multistack#NO_HIBERNATION}
+     */
+    public void setHibernationIdleTime(long hibernationIdleTimeMillis) {
+        setHibernationIdleTime(hibernationIdleTimeMillis, hibernationScheduler);
+    }
+
+    /**
+     * Sets the time after which a stack that is not selected is hibernated.
+     *
+     * When a stack is deselected, its hibernation is scheduled with the provided scheduler, and it is cancelled if the stack is selected again before the idle time passes.
+     * The stacks that are already deselected for longer than the idle time are hibernated immediately.
+     *
+     * @param hibernationIdleTimeMillis the idle time in milliseconds, or {@link Multistack#NO_HIBERNATION}
+     * @param hibernationScheduler      the scheduler that executes the hibernation on the thread of the multistack
+     */
+    public void setHibernationIdleTime(long hibernationIdleTimeMillis, @Nonnull HibernationScheduler hibernationScheduler) {
+        if(hibernationIdleTimeMillis < 0 && hibernationIdleTimeMillis != NO_HIBERNATION) {
+            throw new IllegalArgumentException("The hibernation idle time must be either positive, or NO_HIBERNATION!");
+        }
+        //noinspection ConstantConditions
+        if(hibernationScheduler == null) {
+            throw new IllegalArgumentException("The hibernation scheduler cannot be null!");
+        }
+        for(Stack stack : stacks.values()) {
+            this.hibernationScheduler.cancel(stack.hibernationCheck);
+        }
+        this.hibernationScheduler = hibernationScheduler;
+        this.hibernationIdleTimeNanos = hibernationIdleTimeMillis == NO_HIBERNATION ? NO_HIBERNATION : TimeUnit.MILLISECONDS.toNanos(hibernationIdleTimeMillis);
+        if(hibernationIdleTimeNanos == NO_HIBERNATION) {
+            return;
+        }
+        long now = System.nanoTime();
+        for(Stack stack : stacks.values()) {
+            if(stack.identifier.equals(selectedIdentifier) || stack.backstack == null) {
+                continue;
+            }
+            long remainingNanos = hibernationIdleTimeNanos - (now - stack.deselectedAtNanos);
+            if(remainingNanos <= 0) {
+                hibernate(stack);
+            } else {
+                hibernationScheduler.schedule(stack.hibernationCheck, TimeUnit.NANOSECONDS.toMillis(remainingNanos));
+            }
+        }
+    }
+
+    /**
+     * Sets the listener that receives the time spent hibernating and rehydrating stacks.
+     *
+     * @param hibernationListener the hibernation listener
+     */
+    public void setHibernationListener(@Nullable HibernationListener hibernationListener) {
+        this.hibernationListener = hibernationListener;
+    }
+
+    /**
+     * Hibernates the stacks that are not selected, and have been deselected for longer than the hibernation idle time.
+     */
+    public void hibernateIdleStacks() {
+        if(hibernationIdleTimeNanos == NO_HIBERNATION) {
+            return;
+        }
+        long now = System.nanoTime();
+        for(Stack stack : stacks.values()) {
+            if(!stack.identifier.equals(selectedIdentifier) && now - stack.deselectedAtNanos >= hibernationIdleTimeNanos) {
+                hibernate(stack);
+            }
+        }
+    }
+
+    /**
+     * Hibernates the given stack: its state is persisted, its scopes are finalized, and its backstack is released until it is needed again.
+     *
+     * If the backstack of the stack is not created, then this has no effect.
+     *
+     * @param identifier the stack identifier
+     * @throws IllegalArgumentException if the stack is selected
+     */
+    public void hibernate(@Nonnull String identifier) {
+        Stack stack = getStack(identifier);
+        if(identifier.equals(selectedIdentifier)) {
+            throw new IllegalArgumentException("The selected stack [" + identifier + "] cannot be hibernated!");
+        }
+        hibernate(stack);
+    }
+
+    private void hibernate(Stack stack) {
+        hibernationScheduler.cancel(stack.hibernationCheck);
+        Backstack backstack = stack.backstack;
+        if(backstack == null) {
+            return;
+        }
+        long startNanos = System.nanoTime();
+        backstack.executePendingStateChange();
+        stack.pendingState = backstack.toBundle();
+        backstack.finalizeScopes();
+        stack.backstack = null;
+        stack.isStateChangerSet = false;
+        stack.isHibernated = true;
+        if(hibernationListener != null) {
+            hibernationListener.onStackHibernated(stack.identifier, System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Returns whether the given stack is hibernated.
+     *
+     * @param identifier the stack identifier
+     * @return whether the stack is hibernated
+     */
+    public boolean isHibernated(@Nonnull String identifier) {
+        return getStack(identifier).isHibernated;
+    }
+
+    /**
+     * Forwards the memory trim level to the created backstacks (see {@link Backstack#onTrimMemory(int)}), and from {@link ComponentCallbacks2#TRIM_MEMORY_RUNNING_LOW}, hibernates all stacks that are not selected.
+     *
+     * @param level the trim memory level
+     */
+    public void onTrimMemory(int level) {
+        if(level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW && level != ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            for(Stack stack : stacks.values()) {
+                if(!stack.identifier.equals(selectedIdentifier)) {
+                    hibernate(stack);
+                }
+            }
+        }
+        for(Stack stack : stacks.values()) {
+            if(stack.backstack != null) {
+                stack.backstack.onTrimMemory(level);
+            }
+        }
+    }
+
+    /**
+     * Sets the state changer of the selected stack. The other stacks do not have a state changer.
+     *
+     * @param stateChanger the state changer
+     */
+    public void setStateChanger(@Nullable StateChanger stateChanger) {
+        checkStacks();
+        this.stateChanger = stateChanger;
+        this.isStateChangerDetached = false;
+        Stack selectedStack = stacks.get(selectedIdentifier);
+        if(stateChanger != null) {
+            setStateChangerOf(selectedStack);
+        } else if(selectedStack.backstack != null) {
+            if(selectedStack.backstack.hasStateChanger()) {
+                selectedStack.backstack.removeStateChanger();
+            }
+            selectedStack.isStateChangerSet = false;
+        }
+    }
+
+    /**
+     * Detaches the state changer from the selected stack. Typically called in onPause().
+     */
+    public void detachStateChanger() {
+        isStateChangerDetached = true;
+        for(Stack stack : stacks.values()) {
+            if(stack.backstack != null) {
+                stack.backstack.detachStateChanger();
+            }
+        }
+    }
+
+    /**
+     * Reattaches the state changer to the selected stack. Typically called in onResume().
+     */
+    public void reattachStateChanger() {
+        checkStacks();
+        isStateChangerDetached = false;
+        if(stateChanger == null) {
+            return;
+        }
+        Stack selectedStack = stacks.get(selectedIdentifier);
+        if(selectedStack.isStateChangerSet) {
+            selectedStack.backstack.reattachStateChanger();
+        } else {
+            setStateChangerOf(selectedStack); // selected while the state changer was detached
+        }
+    }
+
+    /**
+     * Executes the pending state changes of the created stacks.
+     */
+    public void executePendingStateChange() {
+        for(Stack stack : stacks.values()) {
+            if(stack.backstack != null) {
+                stack.backstack.executePendingStateChange();
+            }
+        }
+    }
+
+    /**
+     * Finalizes the scopes of the created stacks. Typically called when the Activity is finishing.
+     */
+    public void finalizeScopes() {
+        for(Stack stack : stacks.values()) {
+            hibernationScheduler.cancel(stack.hibernationCheck);
+            if(stack.backstack != null) {
+                stack.backstack.finalizeScopes();
+            }
+        }
+    }
+
+    @Nonnull
+    @Override
+    public StateBundle toBundle() {
+        StateBundle stateBundle = new StateBundle();
+        stateBundle.putString(SELECTED_STACK_TAG, selectedIdentifier);
+        ArrayList<String> identifiers = new ArrayList<>();
+        for(Map.Entry<String, Stack> entry : stacks.entrySet()) {
+            Stack stack = entry.getValue();
+            StateBundle stackState = stack.backstack != null ? stack.backstack.toBundle() : stack.pendingState;
+            if(stackState != null) {
+                identifiers.add(entry.getKey());
+                stateBundle.putBundle(STACK_STATE_PREFIX + entry.getKey(), stackState);
+            }
+        }
+        stateBundle.putStringArrayList(STACK_IDENTIFIERS_TAG, identifiers);
+        return stateBundle;
+    }
+
+    /**
+     * Restores the state of the multistack. The state of each stack is only applied when its backstack is created.
+     *
+     * This must be called after the stacks are added, but before the backstacks are created.
+     *
+     * @param bundle the state bundle
+     */
+    @Override
+    public void fromBundle(@Nullable StateBundle bundle) {
+        if(bundle == null) {
+            return;
+        }
+        String restoredSelectedIdentifier = bundle.getString(SELECTED_STACK_TAG);
+        if(restoredSelectedIdentifier != null && stacks.containsKey(restoredSelectedIdentifier)) {
+            selectedIdentifier = restoredSelectedIdentifier;
+        }
+        List<String> identifiers = bundle.getStringArrayList(STACK_IDENTIFIERS_TAG);
+        if(identifiers == null) {
+            return;
+        }
+        for(String identifier : identifiers) {
+            Stack stack = stacks.get(identifier);
+            if(stack == null) {
+                continue; // the stack is no longer registered
+            }
+            StateBundle stackState = bundle.getBundle(STACK_STATE_PREFIX + identifier);
+            if(stack.backstack != null) {
+                stack.backstack.fromBundle(stackState);
+            } else {
+                stack.pendingState = stackState;
+            }
+        }
+    }
+
+    private void setStateChangerOf(Stack stack) {
+        long startNanos = System.nanoTime();
+        createBackstack(stack);
+        stack.backstack.setStateChanger(stateChanger);
+        stack.isStateChangerSet = true;
+        notifyIfRehydrated(stack, startNanos);
+    }
+
+    private Stack getStack(String identifier) {
+        if(identifier == null) {
+            throw new NullPointerException("identifier cannot be null!");
+        }
+        Stack stack = stacks.get(identifier);
+        if(stack == null) {
+            throw new IllegalArgumentException("The stack [" + identifier + "] is not registered to the multistack!");
+        }
+        return stack;
+    }
+
+    private void checkStacks() {
+        if(selectedIdentifier == null) {
+            throw new IllegalStateException("You must add at least one stack to the multistack!");
+        }
+    }
+}
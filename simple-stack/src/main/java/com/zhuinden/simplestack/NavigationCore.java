@@ -59,6 +59,8 @@ class NavigationCore {
 
     private Backstack backstack;
 
+    private volatile NavigationSnapshot navigationSnapshot = NavigationSnapshot.EMPTY; // published for readers on any thread
+
     void setBackstack(Backstack backstack) {
         this.backstack = backstack;
     }
@@ -593,7 +595,16 @@ class NavigationCore {
     private void enqueueStateChange(List<?> newHistory, int direction, boolean initialization, boolean isTerminal, boolean isForceEnqueued) {
         PendingStateChange pendingStateChange = new PendingStateChange(newHistory, direction, initialization, isTerminal, isForceEnqueued);
         queuedStateChanges.add(pendingStateChange);
-        beginStateChangeIfPossible();
+        if(!beginStateChangeIfPossible()) {
+            notifyStateChangerOfNewStateChange();
+        }
+    }
+
+    private void notifyStateChangerOfNewStateChange() {
+        if(stateChanger instanceof StateChanger.Interruptible
+                && queuedStateChanges.getFirst().getStatus() == PendingStateChange.Status.IN_PROGRESS) {
+            ((StateChanger.Interruptible) stateChanger).onNewStateChangeEnqueued();
+        }
     }
 
     private List<?> selectActiveHistory() {
@@ -656,6 +667,7 @@ class NavigationCore {
         }
         stack.clear();
         stack.addAll(stateChange.newKeys);
+        navigationSnapshot = NavigationSnapshot.create(stack, navigationSnapshot.getVersion() + 1);
 
         PendingStateChange pendingStateChange = queuedStateChanges.removeFirst();
         pendingStateChange.setStatus(PendingStateChange.Status.COMPLETED);
@@ -663,6 +675,16 @@ class NavigationCore {
         beginStateChangeIfPossible();
     }
 
+    /**
+     * Returns the snapshot of the navigation state after the last completed state change. Can be called from any thread.
+     *
+     * @return the navigation snapshot
+     */
+    @Nonnull
+    NavigationSnapshot getNavigationSnapshot() {
+        return navigationSnapshot;
+    }
+
     // completion listeners
 
     private LinkedList<Backstack.CompletionListener> completionListeners = new LinkedList<>();
@@ -0,0 +1,497 @@
+/*
+ * Copyright 2021 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.simplestack;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * An optional append-only journal of the navigation history, that allows recovering the history after the process was killed before the state could be saved.
+ *
+ * Each completed {@link StateChange} is recorded as a single compact operation (push, pop or replace), containing only the keys that were added, encoded with the {@link KeyParceler}.
+ * The operations are appended to a memory-mapped file on a background thread, and are periodically compacted into a checkpoint of the full history.
+ *
+ * The journal should be registered with {@link Backstack#addStateChangeCompletionListener(Backstack.CompletionListener)}.
+ * On cold start (when there is no saved instance state), the history can be restored with {@link NavigationJournal#restoreHistory()}, and passed to {@link Backstack#setup(List)}.
+ *
+ * If writing the journal fails, the journal files are dropped, and a new checkpoint of the full history is written on the next state change.
+ *
+ * NOTE: keys are encoded as marshalled Parcels, so the journal is only meant to be read by the same version of the app that wrote it.
+ */
+public class NavigationJournal
+        implements Backstack.CompletionListener {
+    /**
+     * The default size of the memory-mapped journal file.
+     */
+    public static final int DEFAULT_JOURNAL_SIZE = 64 * 1024;
+
+    /**
+     * The default number of operations after which the journal is compacted into a checkpoint.
+     */
+    public static final int DEFAULT_MAX_OPERATIONS = 64;
+
+    private static final String JOURNAL_FILE_NAME = "navigation.journal";
+    private static final String CHECKPOINT_FILE_NAME = "navigation.checkpoint";
+    private static final String CHECKPOINT_TEMP_FILE_NAME = "navigation.checkpoint.tmp";
+
+    private static final int MAGIC = 0x53534a31; // SSJ1
+    private static final int HEADER_SIZE = 8; // magic + generation
+
+    private static final byte OP_PUSH = 1;
+    private static final byte OP_POP = 2;
+    private static final byte OP_REPLACE = 3;
+
+    private final File journalFile;
+    private final File checkpointFile;
+    private final File checkpointTempFile;
+    private final KeyCodec keyCodec;
+    private final int journalSize;
+    private final int maxOperations;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(@Nonnull Runnable runnable) {
+            Thread thread = new Thread(runnable, "simple-stack-navigation-journal");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private boolean hasRecordedHistory = false;
+
+    // accessed only on the journal thread
+    private final List<byte[]> journaledHistory = new ArrayList<>();
+    private MappedByteBuffer journalBuffer;
+    private int generation;
+    private int operationCount;
+
+    /**
+     * Creates a journal in the given directory, using the {@link DefaultKeyParceler}.
+     *
+     * @param directory the directory of the journal files
+     */
+    public NavigationJournal(@Nonnull File directory) {
+        this(directory, new DefaultKeyParceler());
+    }
+
+    /**
+     * Creates a journal in the given directory.
+     *
+     * @param directory   the directory of the journal files
+     * @param keyParceler the key parceler used to encode the keys
+     */
+    public NavigationJournal(@Nonnull File directory, @Nonnull KeyParceler keyParceler) {
+        this(directory, keyParceler, DEFAULT_JOURNAL_SIZE, DEFAULT_MAX_OPERATIONS);
+    }
+
+    /**
+     * Creates a journal in the given directory.
+     *
+     * @param directory     the directory of the journal files
+     * @param keyParceler   the key parceler used to encode the keys
+     * @param journalSize   the size of the memory-mapped journal file in bytes
+     * @param maxOperations the number of operations after which the journal is compacted into a checkpoint
+     */
+    public NavigationJournal(@Nonnull File directory, @Nonnull KeyParceler keyParceler, int journalSize, int maxOperations) {
+        this(directory, new ParcelKeyCodec(keyParceler), journalSize, maxOperations);
+    }
+
+    NavigationJournal(@Nonnull File directory, @Nonnull KeyCodec keyCodec, int journalSize, int maxOperations) {
+        //noinspection ConstantConditions
+        if(directory == null) {
+            throw new NullPointerException("directory cannot be null!");
+        }
+        if(journalSize <= HEADER_SIZE + 4) {
+            throw new IllegalArgumentException("The journal size is too small!");
+        }
+        if(maxOperations <= 0) {
+            throw new IllegalArgumentException("The maximum number of operations must be positive!");
+        }
+        this.journalFile = new File(directory, JOURNAL_FILE_NAME);
+        this.checkpointFile = new File(directory, CHECKPOINT_FILE_NAME);
+        this.checkpointTempFile = new File(directory, CHECKPOINT_TEMP_FILE_NAME);
+        this.keyCodec = keyCodec;
+        this.journalSize = journalSize;
+        this.maxOperations = maxOperations;
+    }
+
+    /**
+     * Restores the history by replaying the journal on top of the last checkpoint.
+     *
+     * This should be called before the journal starts recording state changes.
+     *
+     * @return the restored history, or null if there is no journaled history, or it could not be read.
+     */
+    @Nullable
+    public List<Object> restoreHistory() {
+        List<byte[]> encodedHistory = new ArrayList<>();
+        try {
+            int checkpointGeneration = readCheckpoint(encodedHistory);
+            replayJournal(checkpointGeneration, encodedHistory);
+        } catch(IOException | RuntimeException e) {
+            return null; // a corrupted journal is equivalent to no journal
+        }
+
+        if(encodedHistory.isEmpty()) {
+            return null;
+        }
+
+        List<Object> history = new ArrayList<>(encodedHistory.size());
+        try {
+            for(byte[] encodedKey : encodedHistory) {
+                history.add(keyCodec.decode(encodedKey));
+            }
+        } catch(RuntimeException e) {
+            return null; // the keys are not readable anymore
+        }
+        return Collections.unmodifiableList(history);
+    }
+
+    /**
+     * Deletes the journaled history, for example when the navigation is finished.
+     */
+    public void clear() {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                drop();
+                journaledHistory.clear();
+            }
+        });
+        hasRecordedHistory = false;
+    }
+
+    /**
+     * Stops recording, after the already recorded operations are written.
+     */
+    public void close() {
+        executor.shutdown();
+    }
+
+    void awaitPendingWrites()
+            throws InterruptedException, ExecutionException {
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                // the executor is sequential
+            }
+        }).get();
+    }
+
+    @Override
+    public void stateChangeCompleted(@Nonnull StateChange stateChange) {
+        List<Object> previousKeys = stateChange.getPreviousKeys();
+        List<Object> newKeys = stateChange.getNewKeys();
+
+        if(!hasRecordedHistory) {
+            hasRecordedHistory = true;
+            final List<byte[]> encodedHistory = encodeKeys(newKeys, 0);
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    journaledHistory.clear();
+                    journaledHistory.addAll(encodedHistory);
+                    compact();
+                }
+            });
+            return;
+        }
+
+        int commonSize = 0;
+        int maxCommonSize = Math.min(previousKeys.size(), newKeys.size());
+        while(commonSize < maxCommonSize && previousKeys.get(commonSize).equals(newKeys.get(commonSize))) {
+            commonSize++;
+        }
+
+        final int popCount = previousKeys.size() - commonSize;
+        final List<byte[]> pushedKeys = encodeKeys(newKeys, commonSize);
+        if(popCount == 0 && pushedKeys.isEmpty()) {
+            return;
+        }
+        final byte op = popCount == 0 ? OP_PUSH : (pushedKeys.isEmpty() ? OP_POP : OP_REPLACE);
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                append(op, popCount, pushedKeys);
+            }
+        });
+    }
+
+    // ----- encoding
+
+    interface KeyCodec {
+        byte[] encode(Object key);
+
+        Object decode(byte[] encodedKey);
+    }
+
+    private static class ParcelKeyCodec
+            implements KeyCodec {
+        private final KeyParceler keyParceler;
+
+        ParcelKeyCodec(KeyParceler keyParceler) {
+            //noinspection ConstantConditions
+            if(keyParceler == null) {
+                throw new NullPointerException("keyParceler cannot be null!");
+            }
+            this.keyParceler = keyParceler;
+        }
+
+        @Override
+        public byte[] encode(Object key) {
+            Parcel parcel = Parcel.obtain();
+            try {
+                parcel.writeParcelable(keyParceler.toParcelable(key), 0);
+                return parcel.marshall();
+            } finally {
+                parcel.recycle();
+            }
+        }
+
+        @Override
+        public Object decode(byte[] encodedKey) {
+            Parcel parcel = Parcel.obtain();
+            try {
+                parcel.unmarshall(encodedKey, 0, encodedKey.length);
+                parcel.setDataPosition(0);
+                Parcelable parcelable = parcel.readParcelable(NavigationJournal.class.getClassLoader());
+                return keyParceler.fromParcelable(parcelable);
+            } finally {
+                parcel.recycle();
+            }
+        }
+    }
+
+    private List<byte[]> encodeKeys(List<Object> keys, int fromIndex) {
+        List<byte[]> encodedKeys = new ArrayList<>(keys.size() - fromIndex);
+        for(int i = fromIndex, size = keys.size(); i < size; i++) {
+            encodedKeys.add(keyCodec.encode(keys.get(i)));
+        }
+        return encodedKeys;
+    }
+
+    private static void applyOperation(List<byte[]> history, byte op, int popCount, List<byte[]> pushedKeys) {
+        if(op != OP_PUSH && op != OP_POP && op != OP_REPLACE) {
+            throw new IllegalStateException("Unknown journal operation [" + op + "]!");
+        }
+        if(popCount > history.size()) {
+            throw new IllegalStateException("The journal pops more keys than the history contains!");
+        }
+        for(int i = 0; i < popCount; i++) {
+            history.remove(history.size() - 1);
+        }
+        history.addAll(pushedKeys);
+    }
+
+    // ----- reading
+
+    private int readCheckpoint(List<byte[]> encodedHistory) throws IOException {
+        if(!checkpointFile.exists()) {
+            return 0;
+        }
+        DataInputStream inputStream = new DataInputStream(new FileInputStream(checkpointFile));
+        try {
+            if(inputStream.readInt() != MAGIC) {
+                throw new IOException("Invalid checkpoint!");
+            }
+            int checkpointGeneration = inputStream.readInt();
+            int keyCount = inputStream.readInt();
+            for(int i = 0; i < keyCount; i++) {
+                byte[] encodedKey = new byte[inputStream.readInt()];
+                inputStream.readFully(encodedKey);
+                encodedHistory.add(encodedKey);
+            }
+            return checkpointGeneration;
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private void replayJournal(int checkpointGeneration, List<byte[]> encodedHistory) throws IOException {
+        if(!journalFile.exists()) {
+            return;
+        }
+        RandomAccessFile file = new RandomAccessFile(journalFile, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if(buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+                return;
+            }
+            if(buffer.getInt() != checkpointGeneration) {
+                return; // the checkpoint was written after this journal, so it already contains these operations
+            }
+            while(buffer.remaining() >= 4) {
+                int length = buffer.getInt();
+                if(length <= 0 || length > buffer.remaining()) {
+                    break; // end of journal, or a record that was not completely written
+                }
+                int limit = buffer.limit();
+                buffer.limit(buffer.position() + length);
+                try {
+                    byte op = buffer.get();
+                    int popCount = buffer.getInt();
+                    int keyCount = buffer.getInt();
+                    List<byte[]> pushedKeys = new ArrayList<>(keyCount);
+                    for(int i = 0; i < keyCount; i++) {
+                        byte[] encodedKey = new byte[buffer.getInt()];
+                        buffer.get(encodedKey);
+                        pushedKeys.add(encodedKey);
+                    }
+                    if(buffer.hasRemaining()) {
+                        break; // corrupted record
+                    }
+                    applyOperation(encodedHistory, op, popCount, pushedKeys);
+                } catch(BufferUnderflowException | IllegalArgumentException | IllegalStateException | NegativeArraySizeException e) {
+                    break; // corrupted record, the history is restored up to the last valid record
+                } finally {
+                    buffer.limit(limit);
+                }
+            }
+        } finally {
+            file.close();
+        }
+    }
+
+    // ----- writing (journal thread)
+
+    private void append(byte op, int popCount, List<byte[]> pushedKeys) {
+        applyOperation(journaledHistory, op, popCount, pushedKeys);
+
+        int length = 1 + 4 + 4; // op + pop count + key count
+        for(byte[] encodedKey : pushedKeys) {
+            length += 4 + encodedKey.length;
+        }
+
+        if(journalBuffer == null || operationCount >= maxOperations || journalBuffer.position() + 4 + length + 4 > journalSize) {
+            compact(); // the checkpoint already includes this operation, this also recovers from a previous failure
+            return;
+        }
+
+        int recordPosition = journalBuffer.position();
+        journalBuffer.position(recordPosition + 4);
+        journalBuffer.put(op);
+        journalBuffer.putInt(popCount);
+        journalBuffer.putInt(pushedKeys.size());
+        for(byte[] encodedKey : pushedKeys) {
+            journalBuffer.putInt(encodedKey.length);
+            journalBuffer.put(encodedKey);
+        }
+        int endPosition = journalBuffer.position();
+        journalBuffer.putInt(endPosition, 0); // terminator
+        journalBuffer.putInt(recordPosition, length); // the record becomes visible only once it is complete
+        journalBuffer.position(endPosition);
+        operationCount++;
+    }
+
+    private void compact() {
+        try {
+            if(journalBuffer == null) {
+                generation = readCheckpointGeneration();
+            }
+            int newGeneration = generation + 1;
+            writeCheckpoint(newGeneration);
+
+            if(journalBuffer == null) {
+                RandomAccessFile file = new RandomAccessFile(journalFile, "rw");
+                try {
+                    journalBuffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, journalSize);
+                } finally {
+                    file.close(); // the mapping stays valid after the channel is closed
+                }
+            }
+            // the old records are terminated before the header matches the new checkpoint, otherwise they could be replayed on top of it
+            journalBuffer.putInt(HEADER_SIZE, 0);
+            journalBuffer.force();
+            journalBuffer.putInt(0, MAGIC);
+            journalBuffer.putInt(4, newGeneration);
+            journalBuffer.force();
+            journalBuffer.position(HEADER_SIZE);
+
+            generation = newGeneration;
+            operationCount = 0;
+        } catch(IOException e) {
+            drop(); // retried on the next state change
+        }
+    }
+
+    private int readCheckpointGeneration() throws IOException {
+        if(!checkpointFile.exists()) {
+            return 0;
+        }
+        DataInputStream inputStream = new DataInputStream(new FileInputStream(checkpointFile));
+        try {
+            return inputStream.readInt() == MAGIC ? inputStream.readInt() : 0;
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private void writeCheckpoint(int checkpointGeneration) throws IOException {
+        FileOutputStream fileOutputStream = new FileOutputStream(checkpointTempFile);
+        DataOutputStream outputStream = new DataOutputStream(fileOutputStream);
+        try {
+            outputStream.writeInt(MAGIC);
+            outputStream.writeInt(checkpointGeneration);
+            outputStream.writeInt(journaledHistory.size());
+            for(byte[] encodedKey : journaledHistory) {
+                outputStream.writeInt(encodedKey.length);
+                outputStream.write(encodedKey);
+            }
+            outputStream.flush();
+            fileOutputStream.getFD().sync();
+        } finally {
+            outputStream.close();
+        }
+        if(!checkpointTempFile.renameTo(checkpointFile)) {
+            throw new IOException("Could not write checkpoint!");
+        }
+    }
+
+    private void drop() {
+        // an incomplete journal must not be replayed, so it is dropped
+        journalBuffer = null;
+        operationCount = 0;
+        //noinspection ResultOfMethodCallIgnored
+        journalFile.delete();
+        //noinspection ResultOfMethodCallIgnored
+        checkpointFile.delete();
+        //noinspection ResultOfMethodCallIgnored
+        checkpointTempFile.delete();
+    }
+}
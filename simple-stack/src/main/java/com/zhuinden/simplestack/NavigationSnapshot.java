@@ -0,0 +1,118 @@
+/*
+ * Copyright 2021 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.simplestack;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * An immutable snapshot of the navigation state after a completed state change, which can be read from any thread.
+ *
+ * A new snapshot is published for each completed state change, see {@link Backstack#getNavigationSnapshot()}.
+ */
+public final class NavigationSnapshot {
+    static final NavigationSnapshot EMPTY = new NavigationSnapshot(History.of(), Collections.<String>emptyList(), 0L);
+
+    private final History<Object> history;
+    private final List<String> activeScopeTags;
+    private final long version;
+
+    private NavigationSnapshot(History<Object> history, List<String> activeScopeTags, long version) {
+        this.history = history;
+        this.activeScopeTags = activeScopeTags;
+        this.version = version;
+    }
+
+    static NavigationSnapshot create(@Nonnull List<?> keys, long version) {
+        History<Object> history = History.from(keys);
+
+        List<String> activeScopeTags = new ArrayList<>();
+        for(int i = 0, size = history.size(); i < size; i++) {
+            Object key = history.fromTop(i);
+            if(key instanceof ScopeKey || key instanceof ScopeKey.Child) { // same as the scopes activated by the backstack
+                if(key instanceof ScopeKey.Child) {
+                    ScopeKey.Child child = (ScopeKey.Child) key;
+                    ScopeManager.checkParentScopes(child);
+                    activeScopeTags.addAll(child.getParentScopes());
+                }
+                if(key instanceof ScopeKey) {
+                    activeScopeTags.add(((ScopeKey) key).getScopeTag());
+                }
+                break;
+            }
+        }
+
+        return new NavigationSnapshot(history, Collections.unmodifiableList(activeScopeTags), version);
+    }
+
+    /**
+     * Returns the history.
+     *
+     * @param <K> the type of the keys
+     * @return the history
+     */
+    @Nonnull
+    public <K> History<K> getHistory() {
+        //noinspection unchecked
+        return (History<K>) history;
+    }
+
+    /**
+     * Returns the top key, or null if no state change was completed yet.
+     *
+     * @param <K> the type of the key
+     * @return the top key
+     */
+    @Nullable
+    public <K> K getTop() {
+        if(history.isEmpty()) {
+            return null;
+        }
+        return history.top();
+    }
+
+    /**
+     * Returns the tags of the scopes that are active for the top key (the explicit parents and the scope of the top-most key that has a scope), in the order they are activated.
+     *
+     * @return the active scope tags
+     */
+    @Nonnull
+    public List<String> getActiveScopeTags() {
+        return activeScopeTags;
+    }
+
+    /**
+     * Returns the version of the snapshot, which is incremented by each completed state change. The version is 0 until the first state change is completed.
+     *
+     * @return the version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public String toString() {
+        return "NavigationSnapshot{" +
+                "history=" + history +
+                ", activeScopeTags=" + activeScopeTags +
+                ", version=" + version +
+                '}';
+    }
+}
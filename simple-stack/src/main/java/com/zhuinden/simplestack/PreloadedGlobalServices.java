@@ -0,0 +1,162 @@
+/*
+ * Copyright 2021 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.simplestack;
+
+import android.os.Build;
+import android.os.Trace;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A {@link GlobalServices.Factory} whose global services are created in the background before the {@link Backstack} needs them, typically started from `Application.onCreate()`.
+ *
+ * The creation is started with {@link PreloadedGlobalServices#preload(Executor, Loader)}, and the returned instance is a {@link java.util.concurrent.Future} of the global services.
+ * When the global scope is created (at the first state change), the backstack only waits if the services are not yet created.
+ * If the loader was not started by the executor at that point, it is run on the thread of the backstack instead.
+ * The wait is marked in the system trace as "PreloadedGlobalServices.await" (from API 18), and its duration is available with {@link PreloadedGlobalServices#getWaitTimeNanos()}.
+ *
+ * As the {@link Backstack} does not exist yet when the services are created, the loader does not receive it.
+ *
+ * If the global scope is created again after the scopes are finalized, then new global services are created by the loader on the thread of the backstack.
+ */
+public final class PreloadedGlobalServices
+        extends FutureTask<GlobalServices>
+        implements GlobalServices.Factory {
+    /**
+     * Creates the global services in the background.
+     */
+    public interface Loader {
+        /**
+         * Creates the global services. This is called on a thread of the executor.
+         *
+         * @return the global services
+         */
+        @Nonnull
+        GlobalServices load();
+    }
+
+    private final Loader loader;
+
+    private boolean isConsumed = false;
+
+    private long waitTimeNanos = 0L;
+
+    private PreloadedGlobalServices(final Loader loader) {
+        super(new Callable<GlobalServices>() {
+            @Override
+            public GlobalServices call() {
+                return checkGlobalServices(loader.load());
+            }
+        });
+        this.loader = loader;
+    }
+
+    /**
+     * Starts creating the global services on the executor.
+     *
+     * @param executor the executor, for example a background thread
+     * @param loader   the loader that creates the global services
+     * @return the preloaded global services, which is also the {@link GlobalServices.Factory} to be set on the {@link Backstack}
+     */
+    @Nonnull
+    public static PreloadedGlobalServices preload(@Nonnull Executor executor, @Nonnull Loader loader) {
+        //noinspection ConstantConditions
+        if(executor == null) {
+            throw new IllegalArgumentException("Executor cannot be null!");
+        }
+        //noinspection ConstantConditions
+        if(loader == null) {
+            throw new IllegalArgumentException("Loader cannot be null!");
+        }
+        PreloadedGlobalServices preloadedGlobalServices = new PreloadedGlobalServices(loader);
+        executor.execute(preloadedGlobalServices);
+        return preloadedGlobalServices;
+    }
+
+    /**
+     * Returns how long the backstack waited for the global services to be created.
+     *
+     * @return the wait time in nanoseconds
+     */
+    public long getWaitTimeNanos() {
+        return waitTimeNanos;
+    }
+
+    @Nonnull
+    @Override
+    public GlobalServices create(@Nonnull Backstack backstack) {
+        if(isConsumed) {
+            return checkGlobalServices(loader.load());
+        }
+        isConsumed = true;
+
+        if(!isDone()) {
+            long startTime = System.nanoTime();
+            if(Build.VERSION.SDK_INT >= 18) {
+                Trace.beginSection("PreloadedGlobalServices.await");
+            }
+            try {
+                run(); // if the executor did not start it yet, it is created on this thread, otherwise this has no effect
+                return getGlobalServices();
+            } finally {
+                if(Build.VERSION.SDK_INT >= 18) {
+                    Trace.endSection();
+                }
+                waitTimeNanos = System.nanoTime() - startTime;
+            }
+        }
+        return getGlobalServices();
+    }
+
+    private GlobalServices getGlobalServices() {
+        boolean isInterrupted = false;
+        try {
+            while(true) {
+                try {
+                    return get();
+                } catch(InterruptedException e) {
+                    isInterrupted = true; // the global services are required to continue
+                }
+            }
+        } catch(ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if(cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("The global services could not be created!", cause);
+        } finally {
+            if(isInterrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static GlobalServices checkGlobalServices(GlobalServices globalServices) {
+        //noinspection ConstantConditions
+        if(globalServices == null) {
+            throw new IllegalStateException("The loader of the global services cannot return null!");
+        }
+        return globalServices;
+    }
+}
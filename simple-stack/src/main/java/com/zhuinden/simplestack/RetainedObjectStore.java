@@ -0,0 +1,193 @@
+/*
+ * Copyright 2021 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.simplestack;
+
+import com.zhuinden.statebundle.StateBundle;
+
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+class RetainedObjectStore {
+    private static class RetainedEntry {
+        private final RetentionTier retentionTier;
+        private final Object strongReference;
+        private final SoftReference<Object> softReference;
+        private final int size;
+
+        RetainedEntry(Object retainedObject, RetentionTier retentionTier, int size) {
+            this.retentionTier = retentionTier;
+            this.strongReference = retentionTier == RetentionTier.SOFT ? null : retainedObject;
+            this.softReference = retentionTier == RetentionTier.SOFT ? new SoftReference<>(retainedObject) : null;
+            this.size = size;
+        }
+
+        @Nullable
+        Object get() {
+            return softReference != null ? softReference.get() : strongReference;
+        }
+
+        boolean isEvictable() {
+            return retentionTier != RetentionTier.STRONG;
+        }
+    }
+
+    private final LinkedHashMap<String, RetainedEntry> entries = new LinkedHashMap<>(16, 0.75f, true); // access-ordered
+    private final StateBundle pendingRestoredStates = new StateBundle();
+
+    private int maxRetainedBytes = Backstack.NO_RETAINED_OBJECT_BUDGET;
+    private int retainedBytes = 0;
+
+    boolean has(@Nonnull String objectTag) {
+        RetainedEntry entry = entries.get(objectTag);
+        if(entry == null) {
+            return false;
+        }
+        if(entry.get() == null) { // collected
+            removeEntry(objectTag);
+            return false;
+        }
+        return true;
+    }
+
+    @Nullable
+    Object get(@Nonnull String objectTag) {
+        RetainedEntry entry = entries.get(objectTag);
+        if(entry == null) {
+            return null;
+        }
+        Object retainedObject = entry.get();
+        if(retainedObject == null) {
+            removeEntry(objectTag);
+        }
+        return retainedObject;
+    }
+
+    void add(@Nonnull String objectTag, @Nonnull Object retainedObject, @Nonnull RetentionTier retentionTier, @Nullable Backstack.RetainedObjectSizeEstimator sizeEstimator) {
+        if(has(objectTag)) {
+            throw new IllegalArgumentException("A retained object is already added with the object tag [" + objectTag + "]");
+        }
+
+        if(pendingRestoredStates.containsKey(objectTag)) {
+            if(!(retainedObject instanceof Bundleable)) {
+                throw new IllegalStateException("State restoration mismatch: expected [" + objectTag + "] to be restored, but was not actually Bundleable anymore.");
+            }
+
+            ((Bundleable) retainedObject).fromBundle(pendingRestoredStates.getBundle(objectTag));
+            pendingRestoredStates.remove(objectTag);
+        }
+
+        int size = sizeEstimator != null ? sizeEstimator.estimateSize(retainedObject) : 0;
+        entries.put(objectTag, new RetainedEntry(retainedObject, retentionTier, size));
+        retainedBytes += size;
+
+        trimToBudget();
+    }
+
+    @Nullable
+    Object remove(@Nonnull String objectTag) {
+        pendingRestoredStates.remove(objectTag);
+        RetainedEntry entry = removeEntry(objectTag);
+        return entry != null ? entry.get() : null;
+    }
+
+    void setMaxRetainedBytes(int maxRetainedBytes) {
+        this.maxRetainedBytes = maxRetainedBytes;
+        trimToBudget();
+    }
+
+    int getRetainedBytes() {
+        return retainedBytes;
+    }
+
+    void evictAll() {
+        Iterator<Map.Entry<String, RetainedEntry>> iterator = entries.entrySet().iterator();
+        while(iterator.hasNext()) {
+            Map.Entry<String, RetainedEntry> entry = iterator.next();
+            if(entry.getValue().isEvictable()) {
+                evict(entry.getKey(), entry.getValue());
+                iterator.remove();
+            }
+        }
+    }
+
+    private void trimToBudget() {
+        if(maxRetainedBytes == Backstack.NO_RETAINED_OBJECT_BUDGET) {
+            return;
+        }
+        Iterator<Map.Entry<String, RetainedEntry>> iterator = entries.entrySet().iterator(); // least recently used first
+        while(retainedBytes > maxRetainedBytes && iterator.hasNext()) {
+            Map.Entry<String, RetainedEntry> entry = iterator.next();
+            if(entry.getValue().isEvictable()) {
+                evict(entry.getKey(), entry.getValue());
+                iterator.remove();
+            }
+        }
+    }
+
+    private void evict(String objectTag, RetainedEntry entry) {
+        retainedBytes -= entry.size;
+        Object retainedObject = entry.get();
+        if(retainedObject instanceof Bundleable) {
+            pendingRestoredStates.putBundle(objectTag, ((Bundleable) retainedObject).toBundle()); // parked until it is re-added
+        }
+    }
+
+    private RetainedEntry removeEntry(String objectTag) {
+        RetainedEntry entry = entries.remove(objectTag);
+        if(entry != null) {
+            retainedBytes -= entry.size;
+        }
+        return entry;
+    }
+
+    @Nonnull
+    StateBundle saveStates() {
+        StateBundle retainedObjectStates = new StateBundle();
+        retainedObjectStates.putAll(pendingRestoredStates); // evicted or not yet re-added
+        for(Map.Entry<String, RetainedEntry> entry : entries.entrySet()) {
+            final String objectTag = entry.getKey();
+            final Object retainedObject = entry.getValue().get();
+
+            if(retainedObject instanceof Bundleable) {
+                StateBundle retainedBundle = ((Bundleable) retainedObject).toBundle();
+                retainedObjectStates.putParcelable(objectTag, retainedBundle);
+            }
+        }
+        return retainedObjectStates;
+    }
+
+    void restoreStates(@Nonnull StateBundle retainedStates) {
+        pendingRestoredStates.putAll(retainedStates);
+
+        for(Map.Entry<String, RetainedEntry> retainedEntry : entries.entrySet()) {
+            String objectTag = retainedEntry.getKey();
+            Object retainedObject = retainedEntry.getValue().get();
+
+            if(retainedObject != null && pendingRestoredStates.containsKey(objectTag)) {
+                if(!(retainedObject instanceof Bundleable)) {
+                    throw new IllegalStateException("State restoration mismatch: expected [" + objectTag + "] to be restored, but was not actually Bundleable anymore.");
+                }
+                ((Bundleable) retainedObject).fromBundle(pendingRestoredStates.getBundle(objectTag));
+                pendingRestoredStates.remove(objectTag);
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2021 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.simplestack;
+
+/**
+ * Specifies how strongly a retained object is kept by the {@link Backstack}.
+ *
+ * See {@link Backstack#addRetainedObject(String, Object, RetentionTier)}.
+ */
+public enum RetentionTier {
+    /**
+     * The retained object is kept until it is explicitly removed.
+     */
+    STRONG,
+
+    /**
+     * The retained object is kept with a soft reference, so it can be collected by the garbage collector.
+     *
+     * It is also evicted when the backstack is asked to trim memory, or when the retained object budget is exceeded.
+     *
+     * NOTE: if the object is collected by the garbage collector, then its state is lost. Bundleable objects should use {@link RetentionTier#EVICT_ON_TRIM}.
+     */
+    SOFT,
+
+    /**
+     * The retained object is kept until it is explicitly removed, or when the backstack is asked to trim memory, or when the retained object budget is exceeded.
+     */
+    EVICT_ON_TRIM
+}
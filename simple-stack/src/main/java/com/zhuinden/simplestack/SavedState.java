@@ -34,6 +34,8 @@ public class SavedState {
     private StateBundle bundle;
     private StateBundle viewBundle;
 
+    private boolean isViewStatePersisted = false;
+
     private SavedState() {
     }
 
@@ -49,6 +51,7 @@ public class SavedState {
 
     public void setViewHierarchyState(SparseArray<Parcelable> viewHierarchyState) {
         this.viewHierarchyState = viewHierarchyState;
+        this.isViewStatePersisted = false;
     }
 
     @Nullable
@@ -67,6 +70,15 @@ public class SavedState {
 
     void setViewBundle(@Nullable StateBundle viewBundle) {
         this.viewBundle = viewBundle;
+        this.isViewStatePersisted = false;
+    }
+
+    boolean isViewStatePersisted() {
+        return isViewStatePersisted;
+    }
+
+    void setViewStatePersisted(boolean isViewStatePersisted) {
+        this.isViewStatePersisted = isViewStatePersisted;
     }
 
     public static Builder builder() {
@@ -21,6 +21,8 @@ import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -29,6 +31,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Executor;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -37,6 +40,14 @@ class ScopeManager {
     private class ScopeRegistrations {
         private final Map<ScopeRegistration, ScopeNode> scopeRegistrations = new LinkedHashMap<>();
 
+        private int modificationCount = 0;
+
+        private List<String> scopeTagsInTraversalOrder = null;
+        private int traversalOrderModificationCount = -1;
+
+        // key -> the last registration of the key, which determines the explicit scopes of the key, same as in findScopesForKey()
+        private final Map<Object, ScopeRegistration> lastRegistrationsOfKeys = new HashMap<>();
+
         public boolean containsKey(String scopeTag) {
             for(ScopeRegistration registration : scopeRegistrations.keySet()) {
                 if(registration.scopeTag.equals(scopeTag)) {
@@ -87,6 +98,36 @@ class ScopeManager {
 
         public void put(ScopeRegistration scopeRegistration, ScopeNode scopeNode) {
             scopeRegistrations.put(scopeRegistration, scopeNode);
+            trackLastRegistrationOfKey(scopeRegistration);
+            modificationCount++;
+        }
+
+        private void trackLastRegistrationOfKey(ScopeRegistration scopeRegistration) {
+            if(scopeRegistration.key != null && !scopeRegistration.isGlobalScope) {
+                lastRegistrationsOfKeys.put(scopeRegistration.key, scopeRegistration);
+            }
+        }
+
+        private void untrackLastRegistrationOfKey(ScopeRegistration scopeRegistration) {
+            if(scopeRegistration.key == null || lastRegistrationsOfKeys.get(scopeRegistration.key) != scopeRegistration) {
+                return;
+            }
+            ScopeRegistration lastRegistration = null;
+            for(ScopeRegistration registration : scopeRegistrations.keySet()) {
+                if(scopeRegistration.key.equals(registration.key)) {
+                    lastRegistration = registration;
+                }
+            }
+            if(lastRegistration != null) {
+                lastRegistrationsOfKeys.put(scopeRegistration.key, lastRegistration);
+            } else {
+                lastRegistrationsOfKeys.remove(scopeRegistration.key);
+            }
+        }
+
+        @Nullable
+        public ScopeRegistration findLastRegistrationOfKey(@Nonnull Object key) {
+            return lastRegistrationsOfKeys.get(key);
         }
 
         @Nullable
@@ -98,6 +139,8 @@ class ScopeManager {
                 if(currentScopeTag.equals(scopeTag)) {
                     ScopeNode scopeNode = entry.getValue();
                     iterator.remove();
+                    untrackLastRegistrationOfKey(entry.getKey());
+                    modificationCount++;
                     return scopeNode;
                 }
             }
@@ -105,6 +148,9 @@ class ScopeManager {
         }
 
         public List<String> getScopeTagsInTraversalOrder() {
+            if(scopeTagsInTraversalOrder != null && traversalOrderModificationCount == modificationCount) {
+                return scopeTagsInTraversalOrder; // reused by lookups until the registrations change
+            }
             LinkedHashSet<String> scopeTags = new LinkedHashSet<>();
             List<ScopeRegistration> registrations = new ArrayList<>(scopeRegistrations.keySet());
             for(int i = registrations.size() - 1; i >= 0; i--) {
@@ -117,7 +163,9 @@ class ScopeManager {
                 }
             }
 
-            return Collections.unmodifiableList(new ArrayList<>(scopeTags));
+            scopeTagsInTraversalOrder = Collections.unmodifiableList(new ArrayList<>(scopeTags));
+            traversalOrderModificationCount = modificationCount;
+            return scopeTagsInTraversalOrder;
         }
 
         public LinkedHashSet<String> findScopesForKey(@Nonnull Object targetKey, boolean explicitOnly) {
@@ -205,6 +253,8 @@ class ScopeManager {
                 ScopeNode scopeNode = scopeRegistrations.remove(scopeRegistration);
                 //noinspection ConstantConditions
                 scopeRegistrations.put(scopeRegistration, scopeNode);
+                trackLastRegistrationOfKey(scopeRegistration);
+                modificationCount++;
             }
         }
     }
@@ -259,6 +309,8 @@ class ScopeManager {
         }
     }
 
+    static final Object SERVICE_NOT_FOUND = new Object(); // services cannot be null, so lookups can return this on a miss
+
     private static final String GLOBAL_SCOPE_TAG = GlobalServices.SCOPE_TAG;
     private final ScopeRegistration globalScopeRegistration = new ScopeRegistration(null, GLOBAL_SCOPE_TAG, Collections.<String>emptyList(), true, true, false);
 
@@ -275,6 +327,18 @@ class ScopeManager {
 
     private final IdentityHashMap<Object, Integer> untrackEventInvocationTracker = new IdentityHashMap<>(); // call unregister/inactivated only once!
 
+    private static class ReleasedService {
+        private final String scopeTag;
+        private final String serviceTag;
+
+        ReleasedService(String scopeTag, String serviceTag) {
+            this.scopeTag = scopeTag;
+            this.serviceTag = serviceTag;
+        }
+    }
+
+    private final IdentityHashMap<Object, ReleasedService> releasedServices = new IdentityHashMap<>();
+
     private boolean isGlobalScopePendingActivation = true;
 
     void activateGlobalScope() {
@@ -319,6 +383,28 @@ class ScopeManager {
         this.scopedServices = scopedServices;
     }
 
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(@Nonnull Runnable runnable) {
+            runnable.run();
+        }
+    };
+
+    private Executor serviceExecutor = DIRECT_EXECUTOR;
+
+    private Executor teardownExecutor = DIRECT_EXECUTOR;
+
+    // the teardown of the services of destroyed scopes, handed to the teardown executor once the scopes are cleaned up
+    private final List<Runnable> pendingTeardowns = new ArrayList<>();
+
+    void setTeardownExecutor(Executor teardownExecutor) {
+        this.teardownExecutor = teardownExecutor;
+    }
+
+    void setServiceExecutor(Executor serviceExecutor) {
+        this.serviceExecutor = serviceExecutor;
+    }
+
     void setGlobalServices(GlobalServices globalServices) {
         this.globalServices = globalServices;
     }
@@ -357,7 +443,9 @@ class ScopeManager {
             scopes.putKey(key, scopeTag, scope, isExplicitParent, false, isDummyScope);
 
             if(!isDummyScope) {
-                scopedServices.bindServices(new ServiceBinder(this, key, scopeTag, scope));
+                ServiceBinder serviceBinder = new ServiceBinder(this, key, scopeTag, scope);
+                scopedServices.bindServices(serviceBinder);
+                serviceBinder.commitDeclaredServices(serviceExecutor);
 
                 for(Map.Entry<String, Object> entry: scope.services()) {
                     if(entry.getValue() == backstack) {
@@ -469,16 +557,71 @@ class ScopeManager {
 
     void finalizeScopes() {
         this.isFinalized = true;
+        pendingScopeKeys.clear(); // the scopes that were not built yet are not built after finalization
 
         // this logic is actually mostly inside Backstack for some reason
         destroyScope(GLOBAL_SCOPE_TAG);
+        dispatchPendingTeardowns();
 
         this.isInitialized = false;
     }
 
     private IdentityHashMap<Object, String> dummyScopeTags = new IdentityHashMap<>();
 
+    // scope tag -> the first and last index of the keys in the history that are explicitly within the scope, used to exit scopes
+    private final Map<String, int[]> scopeKeyRanges = new HashMap<>();
+    private final List<Object> indexedKeys = new ArrayList<>();
+    private int indexedModificationCount = -1;
+
+    private boolean isLazyScopeBuilding = false;
+
+    // keys of the history whose scopes are not yet built in lazy scope building mode, in the order of the history
+    private final List<Object> pendingScopeKeys = new ArrayList<>();
+    private final List<Object> currentKeys = new ArrayList<>();
+
+    void setLazyScopeBuilding(boolean isLazyScopeBuilding) {
+        this.isLazyScopeBuilding = isLazyScopeBuilding;
+    }
+
+    boolean isLazyScopeBuilding() {
+        return isLazyScopeBuilding;
+    }
+
     void buildScopes(List<Object> newKeys) {
+        if(isLazyScopeBuilding) {
+            prepareScopes(newKeys);
+            List<Object> keysOfTopScopes = findKeysOfTopScopes();
+            pendingScopeKeys.removeAll(keysOfTopScopes); // the keys below them are built when they become the top, when they are looked up, or when the pending scopes are built
+            for(Object key : keysOfTopScopes) {
+                buildScopesOfKey(key);
+            }
+            restoreScopeOrder();
+        } else {
+            trackKeys(newKeys);
+            pendingScopeKeys.clear();
+            for(Object key : newKeys) {
+                buildScopesOfKey(key);
+            }
+        }
+
+        indexScopeKeyRanges(newKeys);
+    }
+
+    /**
+     * Tracks the new keys and builds the global scope, but the scopes of the new keys that do not exist yet (including the top key) are only marked as pending.
+     */
+    void prepareScopes(List<Object> newKeys) {
+        trackKeys(newKeys);
+
+        pendingScopeKeys.clear();
+        for(Object key : newKeys) {
+            if(!isScopeOfKeyBuilt(key)) {
+                pendingScopeKeys.add(key);
+            }
+        }
+    }
+
+    private void trackKeys(List<Object> newKeys) {
         if(isFinalized) {
             this.isFinalized = false; // reset this for future travellers, I guess.
             this.isGlobalScopePendingActivation = true; // if we allow scopeRegistrations to be rebuilt once finalized, we need to enable activation of globals.
@@ -490,49 +633,217 @@ class ScopeManager {
         isInitialized = true;
 
         trackedKeys.addAll(newKeys);
+        currentKeys.clear();
+        currentKeys.addAll(newKeys);
+    }
 
-        for(Object key : newKeys) {
+    /**
+     * The keys from the top-most key with an associated scope to the top key. The scopes of the top-most key with an associated scope (and its explicit parents) are activated when the state change is completed.
+     */
+    private List<Object> findKeysOfTopScopes() {
+        for(int i = currentKeys.size() - 1; i >= 0; i--) {
+            Object key = currentKeys.get(i);
+            if(key instanceof ScopeKey || key instanceof ScopeKey.Child) {
+                return new ArrayList<>(currentKeys.subList(i, currentKeys.size()));
+            }
+        }
+        return new ArrayList<>(currentKeys.subList(Math.max(0, currentKeys.size() - 1), currentKeys.size()));
+    }
+
+    boolean isScopeOfTopKeyBuilt() {
+        for(Object key : findKeysOfTopScopes()) {
+            if(pendingScopeKeys.contains(key)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int countUnbuiltScopesOfTopKey() {
+        Set<Object> unbuiltScopes = new HashSet<>(); // explicit parents can be shared by multiple keys
+        for(Object key : findKeysOfTopScopes()) {
+            if(!pendingScopeKeys.contains(key)) {
+                continue;
+            }
             if(key instanceof ScopeKey.Child) {
                 ScopeKey.Child child = (ScopeKey.Child) key;
                 checkParentScopes(child);
                 for(String parent : child.getParentScopes()) {
-                    buildScope(key, parent, true, false);
+                    if(!scopes.containsKey(parent)) {
+                        unbuiltScopes.add(parent);
+                    }
                 }
             }
             if(key instanceof ScopeKey) {
-                ScopeKey scopeKey = (ScopeKey) key;
-                String scopeTag = scopeKey.getScopeTag();
-                buildScope(key, scopeTag, false, false);
+                String scopeTag = ((ScopeKey) key).getScopeTag();
+                if(!scopes.containsKey(scopeTag)) {
+                    unbuiltScopes.add(scopeTag);
+                }
+            } else if(!isScopeOfKeyBuilt(key)) {
+                unbuiltScopes.add(key);
+            }
+        }
+        return unbuiltScopes.size();
+    }
+
+    void buildNextScopeOfTopKey() {
+        for(Object key : findKeysOfTopScopes()) {
+            if(pendingScopeKeys.contains(key)) {
+                if(buildNextScopeOfKey(key)) {
+                    pendingScopeKeys.remove(key);
+                    if(isScopeOfTopKeyBuilt()) {
+                        restoreScopeOrder();
+                    }
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Builds the next scope of the first pending key, in the order of the history.
+     *
+     * @return if there are pending scopes left
+     */
+    boolean buildNextPendingScope() {
+        if(pendingScopeKeys.isEmpty()) {
+            return false;
+        }
+        Object key = pendingScopeKeys.get(0);
+        if(buildNextScopeOfKey(key)) {
+            pendingScopeKeys.remove(key);
+        }
+        return !pendingScopeKeys.isEmpty();
+    }
+
+    private boolean buildNextScopeOfKey(Object key) {
+        if(key instanceof ScopeKey.Child) {
+            ScopeKey.Child child = (ScopeKey.Child) key;
+            checkParentScopes(child);
+            for(String parent : child.getParentScopes()) {
+                if(!scopes.containsKey(parent)) {
+                    buildScope(key, parent, true, false);
+                    return isScopeOfKeyBuilt(key);
+                }
+            }
+        }
+        buildScopesOfKey(key);
+        return true;
+    }
+
+    private void buildScopesOfKey(Object key) {
+        if(key instanceof ScopeKey.Child) {
+            ScopeKey.Child child = (ScopeKey.Child) key;
+            checkParentScopes(child);
+            for(String parent : child.getParentScopes()) {
+                buildScope(key, parent, true, false);
+            }
+        }
+        if(key instanceof ScopeKey) {
+            ScopeKey scopeKey = (ScopeKey) key;
+            String scopeTag = scopeKey.getScopeTag();
+            buildScope(key, scopeTag, false, false);
+        } else {
+            String dummyScope;
+            if(dummyScopeTags.containsKey(key)) {
+                dummyScope = dummyScopeTags.get(key);
             } else {
-                String dummyScope;
-                if(dummyScopeTags.containsKey(key)) {
-                    dummyScope = dummyScopeTags.get(key);
-                } else {
-                    dummyScope = UUID.randomUUID().toString();
+                dummyScope = UUID.randomUUID().toString();
+            }
+            dummyScopeTags.put(key, dummyScope);
+            buildScope(key, dummyScope, false, true);
+        }
+    }
+
+    private boolean isScopeOfKeyBuilt(Object key) {
+        if(key instanceof ScopeKey.Child) {
+            ScopeKey.Child child = (ScopeKey.Child) key;
+            checkParentScopes(child);
+            for(String parent : child.getParentScopes()) {
+                if(!scopes.containsKey(parent)) {
+                    return false;
                 }
-                dummyScopeTags.put(key, dummyScope);
-                buildScope(key, dummyScope, false, true);
             }
         }
+        if(key instanceof ScopeKey) {
+            return scopes.containsKey(((ScopeKey) key).getScopeTag());
+        } else {
+            return dummyScopeTags.containsKey(key) && scopes.containsKey(dummyScopeTags.get(key));
+        }
     }
 
-    void cleanupScopesBy(List<Object> newKeys) {
-        Set<String> currentScopes = new LinkedHashSet<>();
-        currentScopes.add(GLOBAL_SCOPE_TAG); // prevent global scope from being destroyed
+    boolean hasPendingScopes() {
+        return !pendingScopeKeys.isEmpty();
+    }
 
-        for(Object key : newKeys) {
+    void buildPendingScopes() {
+        buildPendingScopes(pendingScopeKeys.size());
+    }
+
+    private void buildPendingScopes(int count) {
+        if(count <= 0) {
+            return;
+        }
+        List<Object> keys = new ArrayList<>(pendingScopeKeys.subList(0, count));
+        pendingScopeKeys.subList(0, count).clear(); // services can look up other services while they are being bound
+
+        for(Object key : keys) {
+            buildScopesOfKey(key);
+        }
+
+        restoreScopeOrder();
+    }
+
+    /**
+     * The scopes of buried keys can be registered after the top, so the order of the history is restored.
+     */
+    void restoreScopeOrder() {
+        for(String scopeTag : findScopeTagsOfKeys(currentKeys)) {
+            if(scopes.containsKey(scopeTag)) {
+                scopes.reorderToEnd(scopeTag);
+            }
+        }
+    }
+
+    private void buildPendingScopesOfKey(Object key) {
+        if(!pendingScopeKeys.isEmpty()) {
+            buildPendingScopes(pendingScopeKeys.lastIndexOf(key) + 1); // the keys below it are also built, as they are its implicit parents
+        }
+    }
+
+    private void buildPendingScopesOfScopeTag(String scopeTag) {
+        for(int i = pendingScopeKeys.size() - 1; i >= 0; i--) {
+            Object key = pendingScopeKeys.get(i);
+            if((key instanceof ScopeKey && scopeTag.equals(((ScopeKey) key).getScopeTag()))
+                    || (key instanceof ScopeKey.Child && ((ScopeKey.Child) key).getParentScopes().contains(scopeTag))) {
+                buildPendingScopes(i + 1);
+                return;
+            }
+        }
+    }
+
+    private Set<String> findScopeTagsOfKeys(List<Object> keys) {
+        Set<String> scopeTags = new LinkedHashSet<>();
+        scopeTags.add(GLOBAL_SCOPE_TAG);
+
+        for(Object key : keys) {
             if(key instanceof ScopeKey.Child) {
                 ScopeKey.Child child = (ScopeKey.Child) key;
                 checkParentScopes(child);
-                currentScopes.addAll(child.getParentScopes());
+                scopeTags.addAll(child.getParentScopes());
             }
             if(key instanceof ScopeKey) {
                 ScopeKey scopeKey = (ScopeKey) key;
-                currentScopes.add(scopeKey.getScopeTag());
+                scopeTags.add(scopeKey.getScopeTag());
             } else if(dummyScopeTags.containsKey(key)) {
-                currentScopes.add(dummyScopeTags.get(key));
+                scopeTags.add(dummyScopeTags.get(key));
             }
         }
+        return scopeTags;
+    }
+
+    void cleanupScopesBy(List<Object> newKeys) {
+        Set<String> currentScopes = findScopeTagsOfKeys(newKeys); // contains the global scope to prevent it from being destroyed
 
         List<String> activeScopes = new ArrayList<>(scopes.keySet());
         Collections.reverse(activeScopes);
@@ -542,14 +853,91 @@ class ScopeManager {
             }
         }
 
+        List<Object> removedPendingKeys = new ArrayList<>(pendingScopeKeys);
+        removedPendingKeys.removeAll(newKeys);
+        for(String pendingScope : findScopeTagsOfKeys(removedPendingKeys)) {
+            if(!currentScopes.contains(pendingScope)) {
+                rootBundle.remove(pendingScope); // the scope was never built, but its restored state should not be used by a new scope with the same tag
+            }
+        }
+        pendingScopeKeys.retainAll(newKeys);
+
         trackedKeys.retainAll(newKeys);
         dummyScopeTags.keySet().retainAll(newKeys);
+        currentKeys.clear();
+        currentKeys.addAll(newKeys);
 
         for(String currentScope : currentScopes) {
             if(activeScopes.contains(currentScope)) {
                 scopes.reorderToEnd(currentScope);
             }
         }
+
+        indexScopeKeyRanges(newKeys);
+
+        dispatchPendingTeardowns();
+    }
+
+    private void indexScopeKeyRanges(List<?> keys) {
+        scopeKeyRanges.clear();
+        for(int i = 0, size = keys.size(); i < size; i++) {
+            ScopeRegistration registration = scopes.findLastRegistrationOfKey(keys.get(i));
+            if(registration == null) {
+                continue;
+            }
+            if(!registration.isDummyScope) {
+                indexScopeKeyRange(registration.scopeTag, i);
+            }
+            for(String scopeTag : registration.explicitParentScopes) {
+                indexScopeKeyRange(scopeTag, i);
+            }
+        }
+        indexedKeys.clear();
+        indexedKeys.addAll(keys);
+        indexedModificationCount = scopes.modificationCount;
+    }
+
+    private void indexScopeKeyRange(String scopeTag, int index) {
+        int[] range = scopeKeyRanges.get(scopeTag);
+        if(range == null) {
+            scopeKeyRanges.put(scopeTag, new int[]{index, index});
+        } else {
+            range[1] = index;
+        }
+    }
+
+    /**
+     * Returns the index of the first key that is explicitly within the scope, which is equivalent to finding the first key for which {@link ScopeManager#canFindScope(Object, String, ScopeLookupMode)} returns true with {@link ScopeLookupMode#EXPLICIT}.
+     *
+     * @return the index, or -1 if no key is within the scope
+     */
+    int findFirstKeyIndexInScope(@Nonnull List<?> keys, @Nonnull String scopeTag) {
+        checkScopeTag(scopeTag);
+
+        if(!isInitialized) {
+            return -1;
+        }
+
+        buildPendingScopesOfScopeTag(scopeTag);
+
+        if(indexedModificationCount != scopes.modificationCount || !isIndexedKeys(keys)) { // the history is not yet the new keys of the state change
+            indexScopeKeyRanges(keys);
+        }
+
+        int[] range = scopeKeyRanges.get(scopeTag);
+        return range == null ? -1 : range[0];
+    }
+
+    private boolean isIndexedKeys(List<?> keys) {
+        if(keys.size() != indexedKeys.size()) {
+            return false;
+        }
+        for(int i = 0, size = keys.size(); i < size; i++) {
+            if(keys.get(i) != indexedKeys.get(i)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     void destroyScope(String scopeTag) {
@@ -563,12 +951,15 @@ class ScopeManager {
         Set<Map.Entry<String, Object>> services = scopeNode.services();
         List<Object> previousServices = new ArrayList<>(services.size());
         for(Map.Entry<String, Object> entry : services) {
-            previousServices.add(entry.getValue());
+            Object service = entry.getValue();
+            rehydrateIfReleased(service); // its state could be stored in the scope being removed
+            previousServices.add(service);
         }
         Collections.reverse(previousServices);
 
         untrackEventInvocationTracker.clear();
 
+        final List<ScopedServices.UnregisteredAsync> unregisteredAsyncServices = new ArrayList<>();
         for(Object service : previousServices) {
             if(!isServiceNotTrackedInScope(scopeEnteredServices, service, scopeTag)) {
                 untrackServiceInScope(scopeEnteredServices, service, scopeTag);
@@ -579,14 +970,48 @@ class ScopeManager {
                     untrackEventInvocationTracker.put(service, 1);
                     ((ScopedServices.Registered) service).onServiceUnregistered();
                 }
+                if(service instanceof ScopedServices.UnregisteredAsync && !containsInstance(unregisteredAsyncServices, service)) {
+                    unregisteredAsyncServices.add((ScopedServices.UnregisteredAsync) service);
+                }
             }
         }
 
         untrackEventInvocationTracker.clear(); // #213
 
+        if(!unregisteredAsyncServices.isEmpty()) {
+            pendingTeardowns.add(new Runnable() {
+                @Override
+                public void run() {
+                    for(ScopedServices.UnregisteredAsync service : unregisteredAsyncServices) {
+                        service.onServiceUnregisteredAsync();
+                    }
+                }
+            });
+        }
+
         rootBundle.remove(scopeTag);
     }
 
+    private static boolean containsInstance(List<?> list, Object instance) {
+        for(Object item : list) {
+            if(item == instance) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void dispatchPendingTeardowns() {
+        if(pendingTeardowns.isEmpty()) {
+            return;
+        }
+        List<Runnable> teardowns = new ArrayList<>(pendingTeardowns);
+        pendingTeardowns.clear();
+        for(Runnable teardown : teardowns) {
+            teardownExecutor.execute(teardown);
+        }
+    }
+
     void dispatchActivation(@Nonnull Set<String> scopesToDeactivate, @Nonnull Set<String> scopesToActivate) {
         if(isGlobalScopePendingActivation) {
             isGlobalScopePendingActivation = false;
@@ -618,6 +1043,8 @@ class ScopeManager {
         for(Map.Entry<String, Object> entry : newScope.services()) {
             Object service = entry.getValue();
 
+            rehydrateIfReleased(service);
+
             if(isServiceNotActivated(service) && service instanceof ScopedServices.Activated) {
                 ((ScopedServices.Activated) service).onServiceActive();
             }
@@ -665,12 +1092,22 @@ class ScopeManager {
             for(Map.Entry<String, Object> serviceEntry : services.services()) {
                 String serviceTag = serviceEntry.getKey();
                 Object service = serviceEntry.getValue();
-                if(service instanceof Bundleable) {
+                if(releasedServices.containsKey(service)) {
+                    StateBundle releasedState = getReleasedState(releasedServices.get(service));
+                    if(releasedState != null) {
+                        scopeBundle.putBundle(serviceTag, releasedState);
+                    }
+                } else if(service instanceof Bundleable) {
                     scopeBundle.putBundle(serviceTag, ((Bundleable) service).toBundle());
                 }
             }
             rootBundle.putBundle(scopeKey, scopeBundle);
         }
+        for(String scopeTag : findScopeTagsOfKeys(pendingScopeKeys)) {
+            if(!rootBundle.containsKey(scopeTag) && this.rootBundle.containsKey(scopeTag)) {
+                rootBundle.putBundle(scopeTag, this.rootBundle.getBundle(scopeTag)); // keep the restored state of scopes that are not yet built
+            }
+        }
         return rootBundle;
     }
 
@@ -680,10 +1117,62 @@ class ScopeManager {
         }
     }
 
+    void releaseInactiveServices() {
+        for(Map.Entry<String, ScopeNode> scopeEntry : scopes.entrySet()) {
+            String scopeTag = scopeEntry.getKey();
+            if(GLOBAL_SCOPE_TAG.equals(scopeTag)) {
+                continue;
+            }
+
+            for(Map.Entry<String, Object> serviceEntry : scopeEntry.getValue().services()) {
+                String serviceTag = serviceEntry.getKey();
+                Object service = serviceEntry.getValue();
+
+                if(service instanceof ScopedServices.Releasable && isServiceNotActivated(service) && !releasedServices.containsKey(service)) {
+                    ScopedServices.Releasable releasable = (ScopedServices.Releasable) service;
+
+                    StateBundle scopeBundle = rootBundle.getBundle(scopeTag);
+                    if(scopeBundle == null) {
+                        scopeBundle = new StateBundle();
+                        rootBundle.putBundle(scopeTag, scopeBundle);
+                    }
+                    scopeBundle.putBundle(serviceTag, releasable.toBundle());
+
+                    releasedServices.put(service, new ReleasedService(scopeTag, serviceTag));
+                    releasable.onServiceReleased();
+                }
+            }
+        }
+    }
+
+    @Nullable
+    private StateBundle getReleasedState(ReleasedService releasedService) {
+        StateBundle scopeBundle = rootBundle.getBundle(releasedService.scopeTag);
+        if(scopeBundle == null) {
+            return null;
+        }
+        return scopeBundle.getBundle(releasedService.serviceTag);
+    }
+
+    private <T> T rehydrateIfReleased(T service) {
+        ReleasedService releasedService = releasedServices.remove(service);
+        if(releasedService != null) {
+            StateBundle releasedState = getReleasedState(releasedService);
+            StateBundle scopeBundle = rootBundle.getBundle(releasedService.scopeTag);
+            if(scopeBundle != null) {
+                scopeBundle.remove(releasedService.serviceTag);
+            }
+            ((Bundleable) service).fromBundle(releasedState);
+        }
+        return service;
+    }
+
     boolean hasService(@Nonnull String scopeTag, @Nonnull String serviceTag) {
         checkScopeTag(scopeTag);
         checkServiceTag(serviceTag);
 
+        buildPendingScopesOfScopeTag(scopeTag);
+
         if(!scopes.containsKey(scopeTag)) {
             return false;
         }
@@ -697,6 +1186,8 @@ class ScopeManager {
         checkScopeTag(scopeTag);
         checkServiceTag(serviceTag);
 
+        buildPendingScopesOfScopeTag(scopeTag);
+
         if(!scopes.containsKey(scopeTag)) {
             throw new IllegalArgumentException("The specified scope with tag [" + scopeTag + "] does not exist!");
         }
@@ -705,12 +1196,14 @@ class ScopeManager {
         if(!services.hasService(serviceTag)) {
             throw new IllegalArgumentException("The specified service with tag [" + serviceTag + "] does not exist in scope [" + scopeTag + "]! Did you accidentally try to use the same scope tag with different services?");
         }
-        return services.getService(serviceTag);
+        return rehydrateIfReleased(services.<T>getService(serviceTag));
     }
 
     boolean hasScope(@Nonnull String scopeTag) {
         checkScopeTag(scopeTag);
 
+        buildPendingScopesOfScopeTag(scopeTag);
+
         return scopes.containsKey(scopeTag);
     }
 
@@ -719,6 +1212,8 @@ class ScopeManager {
         checkKey(key);
         checkScopeLookupMode(lookupMode);
 
+        buildPendingScopesOfKey(key);
+
         return lookupMode.executeFindScopesForKey(this, key);
     }
 
@@ -757,6 +1252,8 @@ class ScopeManager {
         checkScopeTag(scopeTag);
         checkScopeLookupMode(lookupMode);
 
+        buildPendingScopesOfScopeTag(scopeTag);
+
         return lookupMode.executeCanFindFromService(this, scopeTag, serviceTag);
     }
 
@@ -768,6 +1265,8 @@ class ScopeManager {
             return false;
         }
 
+        buildPendingScopesOfKey(targetKey);
+
         Set<String> activeScopes = scopes.findScopesForKey(targetKey, lookupMode == ScopeLookupMode.EXPLICIT);
 
         return activeScopes.contains(scopeTag);
@@ -822,38 +1321,45 @@ class ScopeManager {
         checkServiceTag(serviceTag);
         checkScopeLookupMode(lookupMode);
 
+        buildPendingScopesOfScopeTag(scopeTag);
+
         return lookupMode.executeLookupFromScope(this, scopeTag, serviceTag);
     }
 
     <T> T lookupFromScopeExplicit(String scopeTag, String identifier) {
         verifyStackIsInitialized();
 
-        LinkedHashSet<String> activeScopes = scopes.findScopesForScopeTag(scopeTag, true);
-
-        for(String scope : activeScopes) {
-            ScopeNode scopeNode = scopes.get(scope);
-            if(scopeNode != null && scopeNode.hasService(identifier)) {
-                return scopeNode.getService(identifier);
-            }
-        }
-
-        if(!isFinalized && globalServices.hasService(identifier)) {
-            return globalServices.getService(identifier);
-        }
-
-        throw new IllegalStateException("The service [" + identifier + "] does not exist in any scope that is accessible from [" + scopeTag + "], scopes are [" + Arrays.toString(
-                activeScopes.toArray()) + "]!");
+        return requireServiceFromScope(findServiceFromScope(scopeTag, identifier, true), scopeTag, identifier, true);
     }
 
     <T> T lookupFromScopeAll(String scopeTag, String identifier) {
         verifyStackIsInitialized();
 
-        LinkedHashSet<String> activeScopes = scopes.findScopesForScopeTag(scopeTag, false);
+        return requireServiceFromScope(findServiceFromScope(scopeTag, identifier, false), scopeTag, identifier, false);
+    }
 
-        for(String scope : activeScopes) {
-            ScopeNode scopeNode = scopes.get(scope);
-            if(scopeNode != null && scopeNode.hasService(identifier)) {
-                return scopeNode.getService(identifier);
+    /**
+     * Looks up the service in a single pass over the scopes accessible from the scope tag.
+     *
+     * @return the service, or {@link ScopeManager#SERVICE_NOT_FOUND}
+     */
+    Object findFromScope(String scopeTag, String serviceTag, ScopeLookupMode lookupMode) {
+        checkScopeTag(scopeTag);
+        checkServiceTag(serviceTag);
+        checkScopeLookupMode(lookupMode);
+
+        buildPendingScopesOfScopeTag(scopeTag);
+
+        return findServiceFromScope(scopeTag, serviceTag, lookupMode == ScopeLookupMode.EXPLICIT);
+    }
+
+    private Object findServiceFromScope(String scopeTag, String identifier, boolean explicitOnly) {
+        if(isInitialized) {
+            for(String scope : scopes.findScopesForScopeTag(scopeTag, explicitOnly)) {
+                ScopeNode scopeNode = scopes.get(scope);
+                if(scopeNode != null && scopeNode.hasService(identifier)) {
+                    return rehydrateIfReleased(scopeNode.getService(identifier));
+                }
             }
         }
 
@@ -861,12 +1367,21 @@ class ScopeManager {
             return globalServices.getService(identifier);
         }
 
-        throw new IllegalStateException("The service [" + identifier + "] does not exist in any scope that is accessible from [" + scopeTag + "], scopes are [" + Arrays.toString(
-                activeScopes.toArray()) + "]!");
+        return SERVICE_NOT_FOUND;
+    }
+
+    private <T> T requireServiceFromScope(Object service, String scopeTag, String identifier, boolean explicitOnly) {
+        if(service == SERVICE_NOT_FOUND) {
+            throw new IllegalStateException("The service [" + identifier + "] does not exist in any scope that is accessible from [" + scopeTag + "], scopes are [" + Arrays.toString(
+                    scopes.findScopesForScopeTag(scopeTag, explicitOnly).toArray()) + "]!");
+        }
+        //noinspection unchecked
+        return (T) service;
     }
 
     boolean canFindService(@Nonnull String identifier) {
         checkServiceTag(identifier);
+        buildPendingScopesIfNotInTopScopes(identifier);
         List<String> activeScopes = scopes.getScopeTagsInTraversalOrder();
         for(String scope : activeScopes) {
             ScopeNode scopeNode = scopes.get(scope);
@@ -884,12 +1399,40 @@ class ScopeManager {
 
         verifyStackIsInitialized();
 
-        List<String> activeScopes = scopes.getScopeTagsInTraversalOrder();
+        Object service = findService(identifier);
+        if(service == SERVICE_NOT_FOUND) {
+            throw createServiceNotFoundException(identifier, scopes.getScopeTagsInTraversalOrder());
+        }
+        //noinspection unchecked
+        return (T) service;
+    }
 
-        for(String scope : activeScopes) {
+    static IllegalStateException createServiceNotFoundException(String identifier, List<String> scopeTags) {
+        return new IllegalStateException("The service [" + identifier + "] does not exist in any scopes, which are " + Arrays.toString(scopeTags.toArray()) + "! " +
+                "Is the scope tag registered via a ScopeKey? " +
+                "If yes, make sure the StateChanger has been set by this time, " +
+                "and that you've bound and are trying to lookup the service with the correct service tag. " +
+                "Otherwise, it is likely that the scope you intend to inherit the service from does not exist.");
+    }
+
+    List<String> getScopeTagsInTraversalOrder() {
+        return scopes.getScopeTagsInTraversalOrder();
+    }
+
+    /**
+     * Looks up the service in a single pass over the active scopes, then the global services.
+     *
+     * @return the service, or {@link ScopeManager#SERVICE_NOT_FOUND}
+     */
+    Object findService(@Nonnull String identifier) {
+        checkServiceTag(identifier);
+
+        buildPendingScopesIfNotInTopScopes(identifier);
+
+        for(String scope : scopes.getScopeTagsInTraversalOrder()) {
             ScopeNode scopeNode = scopes.get(scope);
             if(scopeNode != null && scopeNode.hasService(identifier)) {
-                return scopeNode.getService(identifier);
+                return rehydrateIfReleased(scopeNode.getService(identifier));
             }
         }
 
@@ -897,11 +1440,24 @@ class ScopeManager {
             return globalServices.getService(identifier);
         }
 
-        throw new IllegalStateException("The service [" + identifier + "] does not exist in any scopes, which are " + Arrays.toString(activeScopes.toArray()) + "! " +
-                "Is the scope tag registered via a ScopeKey? " +
-                "If yes, make sure the StateChanger has been set by this time, " +
-                "and that you've bound and are trying to lookup the service with the correct service tag. " +
-                "Otherwise, it is likely that the scope you intend to inherit the service from does not exist.");
+        return SERVICE_NOT_FOUND;
+    }
+
+    private void buildPendingScopesIfNotInTopScopes(String identifier) {
+        if(pendingScopeKeys.isEmpty()) {
+            return;
+        }
+        // the scopes of the top keys are the first in traversal order, so a service found in them would be found even if all scopes were built
+        List<Object> keysOfTopScopes = findKeysOfTopScopes();
+        for(int i = keysOfTopScopes.size() - 1; i >= 0; i--) {
+            for(String scopeTag : scopes.findScopesForKey(keysOfTopScopes.get(i), true)) {
+                ScopeNode scopeNode = scopes.get(scopeTag);
+                if(scopeNode != null && scopeNode.hasService(identifier)) {
+                    return;
+                }
+            }
+        }
+        buildPendingScopes();
     }
 
     private void verifyStackIsInitialized() {
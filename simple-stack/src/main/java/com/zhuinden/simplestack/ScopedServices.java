@@ -61,6 +61,21 @@ public interface ScopedServices {
         void onServiceUnregistered();
     }
 
+    /**
+     * When a service implements {@link UnregisteredAsync}, then it will receive a callback on the teardown executor of the {@link Backstack} (see {@link Backstack#setTeardownExecutor(java.util.concurrent.Executor)}) when the service is no longer registered in any scopes.
+     *
+     * This allows heavy teardown (such as closing a database) to happen after the scopes are cleaned up, instead of during the completion of the state change.
+     * If the service also implements {@link Registered}, then {@link Registered#onServiceUnregistered()} is called first on the thread of the backstack.
+     *
+     * The services of a destroyed scope are torn down in a single task, in reverse order.
+     */
+    public static interface UnregisteredAsync {
+        /**
+         * Called on the teardown executor when the service is no longer registered in any scopes.
+         */
+        void onServiceUnregisteredAsync();
+    }
+
     /**
      * When a service implements {@link HandlesBack}, then it will receive a callback when back is being dispatched across the active scope chain.
      */
@@ -73,6 +88,20 @@ public interface ScopedServices {
         boolean onBackEvent();
     }
 
+    /**
+     * When a service implements {@link Releasable}, then its state can be released while none of its scopes are active, when the {@link Backstack} is asked to trim memory.
+     *
+     * Before the service is released, its state is persisted with {@link Bundleable#toBundle()}.
+     * When the service is looked up again, or its scope becomes active, its state is restored with {@link Bundleable#fromBundle(com.zhuinden.statebundle.StateBundle)}.
+     */
+    public static interface Releasable
+            extends Bundleable {
+        /**
+         * Called after the state of the service is persisted, signalling that it should release the data it holds in memory.
+         */
+        void onServiceReleased();
+    }
+
     /**
      * Used to configure the services that belong to given scopes.
      *
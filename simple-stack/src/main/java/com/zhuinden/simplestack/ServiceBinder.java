@@ -15,6 +15,17 @@
  */
 package com.zhuinden.simplestack;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+
 import javax.annotation.Nonnull;
 
 /**
@@ -23,8 +34,73 @@ import javax.annotation.Nonnull;
  * Please note that the service binder is only called when the scope is created, but not called if the scope already exists.
  */
 public class ServiceBinder {
+    /**
+     * Creates a service declared with {@link ServiceBinder#declareService(String, ServiceFactory, String...)}.
+     *
+     * The factory can be called on a thread of the executor set with {@link Backstack#setServiceExecutor(Executor)}, so it should only use its dependencies.
+     *
+     * @param <T> the type of the service
+     */
+    public interface ServiceFactory<T> {
+        /**
+         * Creates the service.
+         *
+         * @param dependencies the dependencies of the service
+         * @return the service
+         */
+        @Nonnull
+        T createService(@Nonnull Dependencies dependencies);
+    }
+
+    /**
+     * The dependencies of a declared service, by their service tag.
+     */
+    public static final class Dependencies {
+        private final Map<String, Object> services = new HashMap<>();
+
+        Dependencies() {
+        }
+
+        /**
+         * Returns the dependency with the given service tag.
+         *
+         * @param serviceTag the service tag
+         * @param <T>        the type of the service
+         * @return the service
+         * @throws IllegalArgumentException if the service tag was not declared as a dependency
+         */
+        @Nonnull
+        public <T> T get(@Nonnull String serviceTag) {
+            if(!services.containsKey(serviceTag)) {
+                throw new IllegalArgumentException("The service [" + serviceTag + "] is not a declared dependency!");
+            }
+            //noinspection unchecked
+            return (T) services.get(serviceTag);
+        }
+    }
+
+    private static class DeclaredService {
+        private final String serviceTag;
+        private final ServiceFactory<?> serviceFactory;
+        private final List<String> dependencyTags;
+
+        private final Dependencies dependencies = new Dependencies();
+        private final List<DeclaredService> dependents = new ArrayList<>();
+        private int remainingDependencies;
+
+        private volatile Object service;
+
+        DeclaredService(String serviceTag, ServiceFactory<?> serviceFactory, List<String> dependencyTags) {
+            this.serviceTag = serviceTag;
+            this.serviceFactory = serviceFactory;
+            this.dependencyTags = dependencyTags;
+        }
+    }
+
     private final ScopeManager scopeManager;
 
+    private final List<DeclaredService> declaredServices = new ArrayList<>();
+
     private final Object key;
     private final String scopeTag;
     private final ScopeNode scope;
@@ -69,6 +145,141 @@ public class ServiceBinder {
         scope.addService(serviceTag, service);
     }
 
+    /**
+     * Declares a service that is created by the factory from its dependencies, after {@link ScopedServices#bindServices(ServiceBinder)} returns.
+     *
+     * The dependencies are either declared services of the same scope, or services that can be looked up from this scope.
+     * Declared services that do not depend on each other are created concurrently by the executor set with {@link Backstack#setServiceExecutor(Executor)}.
+     * Once all of them are created, they are added to the scope in the order of declaration (after the services added with {@link ServiceBinder#addService(String, Object)}) on the thread of the backstack,
+     * and their callbacks are called in the same order as for services added directly.
+     *
+     * @param serviceTag     the tag of the service
+     * @param serviceFactory the factory that creates the service
+     * @param dependencyTags the tags of the services the factory depends on
+     */
+    public void declareService(@Nonnull String serviceTag, @Nonnull ServiceFactory<?> serviceFactory, @Nonnull String... dependencyTags) {
+        //noinspection ConstantConditions
+        if(serviceTag == null) {
+            throw new IllegalArgumentException("Service tag cannot be null!");
+        }
+        //noinspection ConstantConditions
+        if(serviceFactory == null) {
+            throw new IllegalArgumentException("Service factory cannot be null!");
+        }
+        //noinspection ConstantConditions
+        if(dependencyTags == null) {
+            throw new IllegalArgumentException("Dependency tags cannot be null!");
+        }
+        for(DeclaredService declaredService : declaredServices) {
+            if(declaredService.serviceTag.equals(serviceTag)) {
+                throw new IllegalArgumentException("The service [" + serviceTag + "] is already declared in scope [" + scopeTag + "]!");
+            }
+        }
+        declaredServices.add(new DeclaredService(serviceTag, serviceFactory, Collections.unmodifiableList(new ArrayList<>(Arrays.asList(dependencyTags)))));
+    }
+
+    void commitDeclaredServices(@Nonnull Executor executor) {
+        if(declaredServices.isEmpty()) {
+            return;
+        }
+
+        Map<String, DeclaredService> declaredServicesByTag = new HashMap<>();
+        for(DeclaredService declaredService : declaredServices) {
+            declaredServicesByTag.put(declaredService.serviceTag, declaredService);
+        }
+
+        // dependencies that are not declared are resolved on this thread before any service is created
+        List<DeclaredService> readyServices = new ArrayList<>();
+        for(DeclaredService declaredService : declaredServices) {
+            for(String dependencyTag : declaredService.dependencyTags) {
+                DeclaredService dependency = declaredServicesByTag.get(dependencyTag);
+                if(dependency != null) {
+                    dependency.dependents.add(declaredService);
+                    declaredService.remainingDependencies++;
+                } else if(scope.hasService(dependencyTag)) {
+                    declaredService.dependencies.services.put(dependencyTag, scope.getService(dependencyTag));
+                } else if(scopeManager.canFindFromScope(scopeTag, dependencyTag, ScopeLookupMode.ALL)) {
+                    declaredService.dependencies.services.put(dependencyTag, scopeManager.lookupFromScope(scopeTag, dependencyTag, ScopeLookupMode.ALL));
+                } else {
+                    throw new IllegalArgumentException("The dependency [" + dependencyTag + "] of service [" + declaredService.serviceTag + "] is neither declared, nor can it be found from scope [" + scopeTag + "]!");
+                }
+            }
+            if(declaredService.remainingDependencies == 0) {
+                readyServices.add(declaredService);
+            }
+        }
+
+        ExecutorCompletionService<DeclaredService> completionService = new ExecutorCompletionService<>(executor);
+        int submittedServices = 0;
+        for(DeclaredService readyService : readyServices) {
+            submit(completionService, readyService);
+            submittedServices++;
+        }
+
+        RuntimeException failure = null;
+        int completedServices = 0;
+        while(completedServices < submittedServices) {
+            DeclaredService createdService;
+            try {
+                createdService = completionService.take().get();
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while creating the services of scope [" + scopeTag + "]!", e);
+            } catch(ExecutionException e) {
+                completedServices++;
+                if(failure == null) {
+                    failure = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+                }
+                continue; // the services that are already running are waited for, but their dependents are not created
+            }
+            completedServices++;
+
+            if(failure == null) {
+                for(DeclaredService dependent : createdService.dependents) {
+                    dependent.dependencies.services.put(createdService.serviceTag, createdService.service);
+                    dependent.remainingDependencies--;
+                    if(dependent.remainingDependencies == 0) {
+                        submit(completionService, dependent);
+                        submittedServices++;
+                    }
+                }
+            }
+        }
+
+        if(failure != null) {
+            throw failure;
+        }
+        if(submittedServices != declaredServices.size()) {
+            List<String> cyclicServices = new ArrayList<>();
+            for(DeclaredService declaredService : declaredServices) {
+                if(declaredService.service == null) {
+                    cyclicServices.add(declaredService.serviceTag);
+                }
+            }
+            throw new IllegalArgumentException("The declared services " + cyclicServices + " in scope [" + scopeTag + "] have cyclic dependencies!");
+        }
+
+        for(DeclaredService declaredService : declaredServices) {
+            scope.addService(declaredService.serviceTag, declaredService.service);
+        }
+        declaredServices.clear();
+    }
+
+    private static void submit(ExecutorCompletionService<DeclaredService> completionService, final DeclaredService declaredService) {
+        completionService.submit(new Callable<DeclaredService>() {
+            @Override
+            public DeclaredService call() {
+                Object service = declaredService.serviceFactory.createService(declaredService.dependencies);
+                //noinspection ConstantConditions
+                if(service == null) {
+                    throw new IllegalStateException("The service factory of [" + declaredService.serviceTag + "] returned null!");
+                }
+                declaredService.service = service;
+                return declaredService;
+            }
+        });
+    }
+
     /**
      * Returns whether the service with given service tag is in the local scope.
      *
@@ -150,6 +150,8 @@ public class StateChange {
      */
     @Nonnull
     public Context createContext(@Nonnull Context base, @Nonnull Object key) {
-        return new KeyContextWrapper(base, key);
+        KeyContextWrapper keyContextWrapper = new KeyContextWrapper(base, key);
+        keyContextWrapper.backstack = backstack;
+        return keyContextWrapper;
     }
 }
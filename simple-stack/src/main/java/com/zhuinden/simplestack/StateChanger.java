@@ -33,6 +33,18 @@ public interface StateChanger {
         void stateChangeComplete();
     }
 
+    /**
+     * A {@link StateChanger} that implements {@link Interruptible} is notified when a new {@link StateChange} is enqueued while a state change is in progress.
+     *
+     * This allows ending the current state change immediately (for example, by jumping to the end of an animation), so that the next state change can start right away.
+     */
+    interface Interruptible {
+        /**
+         * Called when a new {@link StateChange} is enqueued while the current state change is still in progress.
+         */
+        void onNewStateChangeEnqueued();
+    }
+
     /**
      * This is called when a {@link StateChange} occurs.
      * When the {@link StateChange} is handled, {@link Callback#stateChangeComplete()} must be called.
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2021 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.simplestack.navigator;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import com.zhuinden.simplestack.StateChange;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A {@link DefaultStateChanger.LayoutInflationStrategy} that inflates the layout of {@link DefaultViewKey}s on a dedicated background thread, and hands the inflated view back to the main thread.
+ *
+ * Each inflation uses its own clone of the {@link LayoutInflater} of the provided context, so the inflater is never shared between threads.
+ *
+ * Layouts that cannot be inflated on a thread without a Looper (for example, because a view creates a Handler) are inflated synchronously on the main thread, and for that layout, synchronous inflation is used afterwards.
+ *
+ * To inflate views ahead of time, use it together with a {@link PreInflater}, which then pre-inflates the likely next keys on the background thread as well.
+ */
+public class AsyncLayoutInflationStrategy
+        implements DefaultStateChanger.LayoutInflationStrategy {
+    private static final ExecutorService INFLATER_EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(@Nonnull Runnable runnable) {
+            Thread thread = new Thread(runnable, "simple-stack-layout-inflater");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // accessed only on the main thread
+    private final Set<Integer> synchronousLayouts = new HashSet<>();
+
+    @Override
+    public void inflateLayout(@Nonnull StateChange stateChange, @Nonnull Object key, @Nonnull Context context, @Nonnull ViewGroup container, @Nonnull Callback callback) {
+        int layout = ((DefaultViewKey) key).layout();
+
+        if(synchronousLayouts.contains(layout)) {
+            callback.layoutInflationComplete(LayoutInflater.from(context).inflate(layout, container, false));
+            return;
+        }
+
+        inflateInBackground(LayoutInflater.from(context), layout, container, callback);
+    }
+
+    private void inflateInBackground(LayoutInflater layoutInflater, final int layout, final ViewGroup container, final Callback callback) {
+        final LayoutInflater inflater = layoutInflater.cloneInContext(layoutInflater.getContext()); // used only by the inflater thread
+        INFLATER_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                View view;
+                try {
+                    view = inflater.inflate(layout, container, false);
+                } catch(RuntimeException e) {
+                    view = null; // probably needs a Looper, retried on the main thread
+                }
+                final View inflatedView = view;
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if(inflatedView != null) {
+                            callback.layoutInflationComplete(inflatedView);
+                        } else {
+                            synchronousLayouts.add(layout);
+                            callback.layoutInflationComplete(inflater.inflate(layout, container, false));
+                        }
+                    }
+                });
+            }
+        });
+    }
+}
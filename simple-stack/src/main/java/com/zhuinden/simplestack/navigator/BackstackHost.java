@@ -18,6 +18,9 @@ package com.zhuinden.simplestack.navigator;
 import android.annotation.TargetApi;
 import android.app.Fragment;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.view.ViewGroup;
 
 import com.zhuinden.simplestack.Backstack;
@@ -49,6 +52,7 @@ public final class BackstackHost
     ScopedServices scopedServices;
     GlobalServices globalServices;
     GlobalServices.Factory globalServiceFactory;
+    boolean isLazyScopeBuilding;
     List<Backstack.CompletionListener> stateChangeCompletionListeners;
 
     boolean shouldPersistContainerChild;
@@ -81,6 +85,7 @@ public final class BackstackHost
             if(globalServiceFactory != null) {
                 backstack.setGlobalServices(globalServiceFactory);
             }
+            backstack.setLazyScopeBuilding(isLazyScopeBuilding);
             backstack.setup(initialKeys);
             for(Backstack.CompletionListener completionListener : stateChangeCompletionListeners) {
                 backstack.addStateChangeCompletionListener(completionListener);
@@ -104,14 +109,40 @@ public final class BackstackHost
         outState.putParcelable("NAVIGATOR_STATE_BUNDLE", backstack.toBundle());
     }
 
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private final Runnable nextIdlePass = new Runnable() {
+        @Override
+        public void run() {
+            // the idle handlers are called again once the queue becomes idle after this message
+        }
+    };
+
+    private final MessageQueue.IdleHandler pendingScopeBuilder = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            if(backstack != null && backstack.hasPendingScopes()) {
+                if(backstack.buildNextPendingScope()) { // one scope per idle pass, so that input can be handled in between
+                    handler.post(nextIdlePass);
+                }
+            }
+            return true; // new pending scopes can be added by any state change
+        }
+    };
+
     @Override
     public void onResume() {
         super.onResume();
         backstack.reattachStateChanger();
+        if(backstack.isLazyScopeBuilding()) {
+            Looper.myQueue().addIdleHandler(pendingScopeBuilder);
+        }
     }
 
     @Override
     public void onPause() {
+        Looper.myQueue().removeIdleHandler(pendingScopeBuilder);
+        handler.removeCallbacks(nextIdlePass);
         backstack.detachStateChanger();
         super.onPause();
     }
@@ -131,6 +162,17 @@ public final class BackstackHost
         backstack.finalizeScopes();
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if(backstack != null) {
+            backstack.onTrimMemory(level);
+        }
+        if(stateChanger instanceof DefaultStateChanger) {
+            ((DefaultStateChanger) stateChanger).onTrimMemory(level);
+        }
+    }
+
     public Backstack getBackstack() {
         return backstack;
     }
@@ -15,11 +15,13 @@
  */
 package com.zhuinden.simplestack.navigator;
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 
+import com.zhuinden.simplestack.Backstack;
 import com.zhuinden.simplestack.StateChange;
 import com.zhuinden.simplestack.StateChanger;
 import com.zhuinden.simplestack.navigator.changehandlers.FadeViewChangeHandler;
@@ -35,7 +37,7 @@ import javax.annotation.Nullable;
  * But if {@link LayoutInflationStrategy} and {@link GetViewChangeHandlerStrategy} are re-defined, then this is no longer necessary.
  */
 public final class DefaultStateChanger
-        implements StateChanger {
+        implements StateChanger, StateChanger.Interruptible {
     private static class NoOpStateChanger
             implements StateChanger {
         @Override
@@ -271,6 +273,12 @@ public final class DefaultStateChanger
     private GetViewChangeHandlerStrategy getViewChangeHandlerStrategy;
     private GetPreviousViewStrategy getPreviousViewStrategy;
     private ContextCreationStrategy contextCreationStrategy;
+    private ViewCache viewCache;
+    private Backstack viewCacheBackstack;
+    private PreInflater preInflater;
+    private TransitionMetrics transitionMetrics;
+
+    private ViewChangeHandler runningViewChangeHandler;
 
     /**
      * Used to configure the instance of the {@link DefaultStateChanger}.
@@ -287,6 +295,9 @@ public final class DefaultStateChanger
         GetPreviousViewStrategy getPreviousViewStrategy = null;
         ContextCreationStrategy contextCreationStrategy = null;
         GetViewChangeHandlerStrategy getViewChangeHandlerStrategy = null;
+        ViewCache viewCache = null;
+        PreInflater preInflater = null;
+        TransitionMetrics transitionMetrics = null;
 
         private Configurer() {
         }
@@ -411,6 +422,51 @@ public final class DefaultStateChanger
             return this;
         }
 
+        /**
+         * Sets the {@link ViewCache}. It is used to re-attach previously detached views instead of inflating them again.
+         *
+         * @param viewCache the view cache
+         * @return the configurer
+         */
+        @Nonnull
+        public Configurer setViewCache(@Nonnull ViewCache viewCache) {
+            if(viewCache == null) {
+                throw new NullPointerException("If set, view cache cannot be null!");
+            }
+            this.viewCache = viewCache;
+            return this;
+        }
+
+        /**
+         * Sets the {@link PreInflater}. It is used to pre-inflate the views of the likely next keys while the main thread is idle.
+         *
+         * @param preInflater the pre-inflater
+         * @return the configurer
+         */
+        @Nonnull
+        public Configurer setPreInflater(@Nonnull PreInflater preInflater) {
+            if(preInflater == null) {
+                throw new NullPointerException("If set, pre-inflater cannot be null!");
+            }
+            this.preInflater = preInflater;
+            return this;
+        }
+
+        /**
+         * Sets the {@link TransitionMetrics}. It is used to measure the timing of each view change.
+         *
+         * @param transitionMetrics the transition metrics
+         * @return the configurer
+         */
+        @Nonnull
+        public Configurer setTransitionMetrics(@Nonnull TransitionMetrics transitionMetrics) {
+            if(transitionMetrics == null) {
+                throw new NullPointerException("If set, transition metrics cannot be null!");
+            }
+            this.transitionMetrics = transitionMetrics;
+            return this;
+        }
+
         /**
          * Creates the {@link DefaultStateChanger} with the specified parameters.
          *
@@ -429,7 +485,10 @@ public final class DefaultStateChanger
                     statePersistenceStrategy,
                     getPreviousViewStrategy,
                     contextCreationStrategy,
-                    getViewChangeHandlerStrategy);
+                    getViewChangeHandlerStrategy,
+                    viewCache,
+                    preInflater,
+                    transitionMetrics);
         }
     }
 
@@ -454,10 +513,10 @@ public final class DefaultStateChanger
      */
     @Nonnull
     public static DefaultStateChanger create(Context baseContext, ViewGroup container) {
-        return new DefaultStateChanger(baseContext, container, null, null, null, null, null, null, null, null);
+        return new DefaultStateChanger(baseContext, container, null, null, null, null, null, null, null, null, null, null, null);
     }
 
-    DefaultStateChanger(@Nonnull Context baseContext, @Nonnull ViewGroup container, @Nullable StateChanger externalStateChanger, ViewChangeStartListener viewChangeStartListener, @Nullable ViewChangeCompletionListener viewChangeCompletionListener, @Nullable LayoutInflationStrategy layoutInflationStrategy, @Nullable StatePersistenceStrategy statePersistenceStrategy, @Nullable GetPreviousViewStrategy getPreviousViewStrategy, @Nullable ContextCreationStrategy contextCreationStrategy, GetViewChangeHandlerStrategy getViewChangeHandlerStrategy) {
+    DefaultStateChanger(@Nonnull Context baseContext, @Nonnull ViewGroup container, @Nullable StateChanger externalStateChanger, ViewChangeStartListener viewChangeStartListener, @Nullable ViewChangeCompletionListener viewChangeCompletionListener, @Nullable LayoutInflationStrategy layoutInflationStrategy, @Nullable StatePersistenceStrategy statePersistenceStrategy, @Nullable GetPreviousViewStrategy getPreviousViewStrategy, @Nullable ContextCreationStrategy contextCreationStrategy, GetViewChangeHandlerStrategy getViewChangeHandlerStrategy, @Nullable ViewCache viewCache, @Nullable PreInflater preInflater, @Nullable TransitionMetrics transitionMetrics) {
         if(baseContext == null) {
             throw new NullPointerException("baseContext cannot be null");
         }
@@ -498,9 +557,51 @@ public final class DefaultStateChanger
             getViewChangeHandlerStrategy = new DefaultGetViewChangeHandlerStrategy();
         }
         this.getViewChangeHandlerStrategy = getViewChangeHandlerStrategy;
+        this.viewCache = viewCache;
+        this.preInflater = preInflater;
+        this.transitionMetrics = transitionMetrics;
+    }
+
+    /**
+     * Releases the views of the {@link ViewCache} and the {@link PreInflater} (if set) based on the memory trim level.
+     *
+     * @param level the trim memory level
+     */
+    public void onTrimMemory(int level) {
+        if(viewCache != null) {
+            viewCache.onTrimMemory(level);
+        }
+        if(preInflater != null && level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            preInflater.clear();
+        }
+    }
+
+    private void evictCachedViews(StateChange stateChange) {
+        if(viewCache == null) {
+            return;
+        }
+        Backstack backstack = stateChange.getBackstack();
+        if(viewCacheBackstack != backstack) { // the cached views belong to the scopes of another backstack
+            viewCache.clear();
+            viewCacheBackstack = backstack;
+        }
+        viewCache.retainKeys(stateChange.getNewKeys()); // the scopes of the removed keys are destroyed
     }
 
-    private void finishStateChange(StateChange stateChange, ViewGroup container, View previousView, View newView, final Callback completionCallback) {
+    private void cachePreviousView(@Nullable Object previousKey, @Nullable View previousView, StateChange stateChange) {
+        if(viewCache != null && previousKey != null && previousView != null && stateChange.getNewKeys().contains(previousKey)) {
+            viewCache.put(previousKey, previousView);
+        }
+    }
+
+    private void schedulePreInflation(Object newKey, StateChange stateChange) {
+        if(preInflater != null) {
+            preInflater.scheduleFor(newKey, baseContext, container, stateChange, contextCreationStrategy, layoutInflationStrategy);
+        }
+    }
+
+    private void finishStateChange(Object newKey, StateChange stateChange, ViewGroup container, View previousView, View newView, final Callback completionCallback) {
+        schedulePreInflation(newKey, stateChange);
         viewChangeCompletionListener.handleViewChangeComplete(stateChange,
                 container,
                 previousView,
@@ -519,6 +620,8 @@ public final class DefaultStateChanger
             @Override
             public void stateChangeComplete() {
                 if(stateChange.isTopNewKeyEqualToPrevious()) {
+                    evictCachedViews(stateChange);
+                    schedulePreInflation(stateChange.topNewKey(), stateChange); // the keys below the top could have changed
                     completionCallback.stateChangeComplete();
                     return;
                 }
@@ -530,6 +633,17 @@ public final class DefaultStateChanger
         });
     }
 
+    /**
+     * If the view change in progress uses a {@link ViewChangeHandler} that implements {@link ViewChangeHandler.Interruptible}, then the view change is ended immediately.
+     */
+    @Override
+    public void onNewStateChangeEnqueued() {
+        ViewChangeHandler viewChangeHandler = runningViewChangeHandler;
+        if(viewChangeHandler instanceof ViewChangeHandler.Interruptible) {
+            ((ViewChangeHandler.Interruptible) viewChangeHandler).endViewChange(container);
+        }
+    }
+
     /**
      * Handles the view change using the provided parameters. The direction is specified by the direction in the state change.
      *
@@ -556,6 +670,94 @@ public final class DefaultStateChanger
         if(previousView != null && previousKey != null) {
             statePersistenceStrategy.persistViewToState(previousKey, previousView);
         }
+        evictCachedViews(stateChange);
+        final TransitionMetrics.Sample sample = transitionMetrics != null ? transitionMetrics.startSample() : null;
+        final long inflationStartNanos = System.nanoTime();
+        final View cachedView = viewCache != null ? viewCache.take(newKey, container.getResources().getConfiguration()) : null;
+        LayoutInflationStrategy.Callback layoutInflationCallback = new LayoutInflationStrategy.Callback() {
+            @Override
+            public void layoutInflationComplete(@Nonnull final View newView) {
+                final long restoreStartNanos = System.nanoTime();
+                if(newView != cachedView) { // a cached view still has its state
+                    statePersistenceStrategy.restoreViewFromState(newKey, newView);
+                }
+                if(sample != null) {
+                    sample.inflationNanos = restoreStartNanos - inflationStartNanos;
+                    sample.restoreStateNanos = System.nanoTime() - restoreStartNanos;
+                }
+                viewChangeStartListener.handleViewChangeStart(stateChange,
+                        container,
+                        previousView,
+                        newView,
+                        new ViewChangeStartListener.Callback() {
+                            @Override
+                            public void startViewChange() {
+                                if(previousView == null) {
+                                    container.addView(newView);
+                                    if(sample != null) {
+                                        transitionMetrics.finishSample(newKey, sample);
+                                    }
+                                    finishStateChange(newKey,
+                                            stateChange,
+                                            container,
+                                            previousView,
+                                            newView,
+                                            completionCallback);
+                                } else {
+                                    final ViewChangeHandler viewChangeHandler = getViewChangeHandlerStrategy.getViewChangeHandler(
+                                            stateChange,
+                                            container,
+                                            previousKey,
+                                            newKey,
+                                            previousView, newView, direction);
+                                    runningViewChangeHandler = viewChangeHandler;
+                                    final long viewChangeStartNanos = System.nanoTime();
+                                    final Object frameCounter = sample != null ? transitionMetrics.startFrameCounter(container.getContext(), sample) : null;
+                                    viewChangeHandler.performViewChange(container,
+                                            previousView,
+                                            newView,
+                                            direction,
+                                            new ViewChangeHandler.TimedViewChangeCallback() {
+                                                private long animationStartNanos = 0;
+
+                                                @Override
+                                                public void onAnimationStarted() {
+                                                    animationStartNanos = System.nanoTime();
+                                                }
+
+                                                @Override
+                                                public void onCompleted() {
+                                                    runningViewChangeHandler = null;
+                                                    if(sample != null) {
+                                                        transitionMetrics.stopFrameCounter(frameCounter);
+                                                        long animationStart = animationStartNanos != 0 ? animationStartNanos : viewChangeStartNanos;
+                                                        sample.measureWaitNanos = animationStart - viewChangeStartNanos;
+                                                        sample.animationNanos = System.nanoTime() - animationStart;
+                                                        transitionMetrics.finishSample(newKey, sample);
+                                                    }
+                                                    cachePreviousView(previousKey, previousView, stateChange);
+                                                    finishStateChange(newKey,
+                                                            stateChange,
+                                                            container,
+                                                            previousView,
+                                                            newView,
+                                                            completionCallback);
+                                                }
+                                            });
+                                }
+                            }
+                        });
+            }
+        };
+        if(cachedView != null) {
+            layoutInflationCallback.layoutInflationComplete(cachedView);
+            return;
+        }
+        View preInflatedView = preInflater != null ? preInflater.take(newKey) : null;
+        if(preInflatedView != null) {
+            layoutInflationCallback.layoutInflationComplete(preInflatedView);
+            return;
+        }
         Context newContext = contextCreationStrategy.createContext(stateChange.createContext(baseContext, newKey),
                 newKey,
                 container,
@@ -564,49 +766,6 @@ public final class DefaultStateChanger
                 newKey,
                 newContext,
                 container,
-                new LayoutInflationStrategy.Callback() {
-                    @Override
-                    public void layoutInflationComplete(@Nonnull final View newView) {
-                        statePersistenceStrategy.restoreViewFromState(newKey, newView);
-                        viewChangeStartListener.handleViewChangeStart(stateChange,
-                                container,
-                                previousView,
-                                newView,
-                                new ViewChangeStartListener.Callback() {
-                                    @Override
-                                    public void startViewChange() {
-                                        if(previousView == null) {
-                                            container.addView(newView);
-                                            finishStateChange(stateChange,
-                                                    container,
-                                                    previousView,
-                                                    newView,
-                                                    completionCallback);
-                                        } else {
-                                            final ViewChangeHandler viewChangeHandler = getViewChangeHandlerStrategy.getViewChangeHandler(
-                                                    stateChange,
-                                                    container,
-                                                    previousKey,
-                                                    newKey,
-                                                    previousView, newView, direction);
-                                            viewChangeHandler.performViewChange(container,
-                                                    previousView,
-                                                    newView,
-                                                    direction,
-                                                    new ViewChangeHandler.ViewChangeCallback() {
-                                                        @Override
-                                                        public void onCompleted() {
-                                                            finishStateChange(stateChange,
-                                                                    container,
-                                                                    previousView,
-                                                                    newView,
-                                                                    completionCallback);
-                                                        }
-                                                    });
-                                        }
-                                    }
-                                });
-                    }
-                });
+                layoutInflationCallback);
     }
 }
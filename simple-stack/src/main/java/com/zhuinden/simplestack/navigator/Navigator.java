@@ -28,6 +28,7 @@ import com.zhuinden.simplestack.DefaultKeyFilter;
 import com.zhuinden.simplestack.DefaultKeyParceler;
 import com.zhuinden.simplestack.DefaultStateClearStrategy;
 import com.zhuinden.simplestack.GlobalServices;
+import com.zhuinden.simplestack.KeyContextWrapper;
 import com.zhuinden.simplestack.KeyFilter;
 import com.zhuinden.simplestack.KeyParceler;
 import com.zhuinden.simplestack.SavedState;
@@ -36,6 +37,7 @@ import com.zhuinden.simplestack.ScopeLookupMode;
 import com.zhuinden.simplestack.ScopedServices;
 import com.zhuinden.simplestack.StateChanger;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -59,6 +61,7 @@ public class Navigator {
     @TargetApi(11)
     public static class Installer {
         StateChanger stateChanger;
+        PreInflater preInflater = null;
         KeyFilter keyFilter = new DefaultKeyFilter();
         KeyParceler keyParceler = new DefaultKeyParceler();
         Backstack.StateClearStrategy stateClearStrategy = new DefaultStateClearStrategy();
@@ -67,6 +70,7 @@ public class Navigator {
         GlobalServices.Factory globalServiceFactory = null;
         boolean isInitializeDeferred = false;
         boolean shouldPersistContainerChild = false;
+        boolean isLazyScopeBuilding = false;
         List<Backstack.CompletionListener> stateChangeCompletionListeners = new LinkedList<>();
 
         /**
@@ -86,6 +90,23 @@ public class Navigator {
             return this;
         }
 
+        /**
+         * Sets the {@link PreInflater} used by the {@link DefaultStateChanger}, to pre-inflate the views of the likely next keys.
+         *
+         * Only used if no custom state changer is set.
+         *
+         * @param preInflater if set, cannot be null.
+         * @return the installer
+         */
+        @Nonnull
+        public Installer setPreInflater(@Nonnull PreInflater preInflater) {
+            if(preInflater == null) {
+                throw new NullPointerException("If set, pre-inflater cannot be null!"); // same as DefaultStateChanger.Configurer
+            }
+            this.preInflater = preInflater;
+            return this;
+        }
+
         /**
          * Sets the key filter for filtering the state keys to be restored after process death.
          *
@@ -176,6 +197,19 @@ public class Navigator {
             return this;
         }
 
+        /**
+         * Sets if the scopes of the keys below the top key should only be built when they are needed, see {@link Backstack#setLazyScopeBuilding(boolean)}.
+         * The pending scopes are built when the main thread is idle while the activity is resumed.
+         *
+         * @param isLazyScopeBuilding if the scopes of the keys below the top should be built lazily
+         * @return the installer
+         */
+        @Nonnull
+        public Installer setLazyScopeBuilding(boolean isLazyScopeBuilding) {
+            this.isLazyScopeBuilding = isLazyScopeBuilding;
+            return this;
+        }
+
         /**
          * Sets if after initialization, the state changer should only be set when {@link Navigator#executeDeferredInitialization(Context)} is called.
          * Typically needed to setup the backstack for dependency injection module.
@@ -229,7 +263,11 @@ public class Navigator {
         public Backstack install(@Nonnull Activity activity, @Nonnull ViewGroup container, @Nonnull List<?> initialKeys) {
             if(stateChanger == null) {
                 shouldPersistContainerChild = true;
-                stateChanger = DefaultStateChanger.create(activity, container);
+                if(preInflater != null) {
+                    stateChanger = DefaultStateChanger.configure().setPreInflater(preInflater).create(activity, container);
+                } else {
+                    stateChanger = DefaultStateChanger.create(activity, container);
+                }
             }
             return Navigator.install(this, activity, container, initialKeys);
         }
@@ -282,6 +320,7 @@ public class Navigator {
         backstackHost.scopedServices = installer.scopedServices;
         backstackHost.globalServices = installer.globalServices;
         backstackHost.globalServiceFactory = installer.globalServiceFactory;
+        backstackHost.isLazyScopeBuilding = installer.isLazyScopeBuilding;
         backstackHost.stateChangeCompletionListeners = installer.stateChangeCompletionListeners;
         backstackHost.shouldPersistContainerChild = installer.shouldPersistContainerChild;
         backstackHost.container = container;
@@ -394,6 +433,28 @@ public class Navigator {
         return getBackstack(context).lookupService(serviceTag);
     }
 
+    /**
+     * Attempts to look-up each service in all currently existing scopes, starting from the last added scope.
+     * The backstack is resolved from the context only once.
+     * If any of the services is not found, an exception is thrown.
+     *
+     * @param serviceTags the tags of the services
+     * @return the services, in the order of the provided tags
+     * @throws IllegalStateException if a service doesn't exist in any scope
+     */
+    @Nonnull
+    public static List<Object> lookupServices(@Nonnull Context context, @Nonnull String... serviceTags) {
+        if(serviceTags == null) {
+            throw new NullPointerException("serviceTags cannot be null!");
+        }
+        Backstack backstack = getBackstack(context);
+        List<Object> services = new ArrayList<>(serviceTags.length);
+        for(String serviceTag : serviceTags) {
+            services.add(backstack.lookupService(serviceTag));
+        }
+        return services;
+    }
+
     /**
      * Returns a list of the scopes accessible from the given key.
      *
@@ -468,13 +529,32 @@ public class Navigator {
     /**
      * Gets the backstack that belongs to the Activity which hosts the backstack.
      *
+     * If the context is (or wraps) a {@link KeyContextWrapper} created by a backstack, then that backstack is returned,
+     * even if it is not the backstack hosted by the Activity (for example, a nested backstack).
+     * Otherwise, the backstack is taken from the {@link BackstackHost} of the Activity.
+     *
      * @param context the context
      * @return the backstack
      */
     @Nonnull
     public static Backstack getBackstack(@Nonnull Context context) {
-        BackstackHost backstackHost = getBackstackHost(context);
-        return backstackHost.getBackstack();
+        if(context == null) {
+            throw new IllegalArgumentException("Context cannot be null!");
+        }
+        Context currentContext = context;
+        while(!(currentContext instanceof Activity)) {
+            if(currentContext instanceof KeyContextWrapper) {
+                Backstack backstack = ((KeyContextWrapper) currentContext).getBackstack();
+                if(backstack != null) {
+                    return backstack;
+                }
+            }
+            currentContext = ((ContextWrapper) currentContext).getBaseContext();
+            if(currentContext == null) {
+                throw new IllegalStateException("Activity was not found as base context of view!");
+            }
+        }
+        return findBackstackHost((Activity) currentContext).getBackstack();
     }
 
     /**
@@ -484,9 +564,7 @@ public class Navigator {
      */
     public static void persistViewToState(@Nullable View view) {
         if(view != null) {
-            Context context = view.getContext();
-            BackstackHost backstackHost = getBackstackHost(context);
-            backstackHost.getBackstack().persistViewToState(view);
+            getBackstack(view.getContext()).persistViewToState(view);
         }
     }
 
@@ -499,9 +577,7 @@ public class Navigator {
         if(view == null) {
             throw new NullPointerException("You cannot restore state into null view!");
         }
-        Context context = view.getContext();
-        BackstackHost backstackHost = getBackstackHost(context);
-        backstackHost.getBackstack().restoreViewFromState(view);
+        getBackstack(view.getContext()).restoreViewFromState(view);
     }
 
     /**
@@ -519,8 +595,7 @@ public class Navigator {
         if(key == null) {
             throw new NullPointerException("key cannot be null");
         }
-        BackstackHost backstackHost = getBackstackHost(context);
-        return backstackHost.getBackstack().getSavedState(key);
+        return getBackstack(context).getSavedState(key);
     }
 
     /**
@@ -564,9 +639,4 @@ public class Navigator {
             return findActivity(baseContext);
         }
     }
-
-    private static BackstackHost getBackstackHost(Context context) {
-        Activity activity = findActivity(context);
-        return findBackstackHost(activity);
-    }
 }
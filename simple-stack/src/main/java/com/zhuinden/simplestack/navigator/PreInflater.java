@@ -0,0 +1,291 @@
+/*
+ * Copyright 2021 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.simplestack.navigator;
+
+import android.content.Context;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.view.View;
+import android.view.ViewGroup;
+
+import com.zhuinden.simplestack.Backstack;
+import com.zhuinden.simplestack.ScopeKey;
+import com.zhuinden.simplestack.StateChange;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Pre-inflates the views of the likely next destinations while the main thread is idle, so that navigating to them does not need to inflate the layout.
+ *
+ * When set with {@link DefaultStateChanger.Configurer#setPreInflater(PreInflater)}, after each view change the {@link HintProvider} is asked for the likely next keys of the new top key.
+ * Their contexts are created with the configured {@link DefaultStateChanger.ContextCreationStrategy}, and they are inflated one at a time using a {@link MessageQueue.IdleHandler} with the configured {@link DefaultStateChanger.LayoutInflationStrategy}, into a small pool.
+ * (With {@link AsyncLayoutInflationStrategy}, the layouts are inflated on a background thread.)
+ * When one of these keys is navigated to, the pre-inflated view is used.
+ *
+ * As views can look up their services when they are inflated, only those keys are pre-inflated whose scopes (see {@link ScopeKey} and {@link ScopeKey.Child}) are already built for the keys in the history.
+ * A pre-inflated view is discarded when its scopes are destroyed.
+ *
+ * The hit and wasted inflation counts can be used to tune the hints.
+ */
+public class PreInflater {
+    /**
+     * Provides the keys that are likely to be navigated to from the given key.
+     */
+    public interface HintProvider {
+        /**
+         * Returns the likely next keys, in order of likelihood.
+         *
+         * @param key the current top key
+         * @return the likely next keys
+         */
+        @Nonnull
+        List<?> getLikelyNextKeys(@Nonnull Object key);
+    }
+
+    private final HintProvider hintProvider;
+    private final int maxPreInflatedViews;
+
+    private final LinkedHashMap<Object, View> preInflatedViews = new LinkedHashMap<>();
+    private final LinkedList<Object> pendingKeys = new LinkedList<>();
+
+    private Set<String> availableScopeTags = Collections.emptySet();
+
+    private Context baseContext;
+    private ViewGroup container;
+    private StateChange stateChange;
+    private DefaultStateChanger.ContextCreationStrategy contextCreationStrategy;
+    private DefaultStateChanger.LayoutInflationStrategy layoutInflationStrategy;
+
+    private int generation = 0; // inflations that complete after a navigation are discarded
+
+    private boolean isIdleHandlerAdded = false;
+
+    private int hitCount = 0;
+    private int missCount = 0;
+    private int inflationCount = 0;
+    private int wastedInflationCount = 0;
+
+    private final MessageQueue.IdleHandler idleHandler = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            Object key = pendingKeys.poll();
+            if(key != null && container != null) {
+                preInflate(key);
+            }
+            isIdleHandlerAdded = !pendingKeys.isEmpty();
+            return isIdleHandlerAdded;
+        }
+    };
+
+    /**
+     * Creates a pre-inflater.
+     *
+     * @param hintProvider        the hint provider
+     * @param maxPreInflatedViews the maximum number of pre-inflated views kept at a time
+     */
+    public PreInflater(@Nonnull HintProvider hintProvider, int maxPreInflatedViews) {
+        //noinspection ConstantConditions
+        if(hintProvider == null) {
+            throw new NullPointerException("hintProvider cannot be null!");
+        }
+        if(maxPreInflatedViews <= 0) {
+            throw new IllegalArgumentException("The maximum number of pre-inflated views must be positive!");
+        }
+        this.hintProvider = hintProvider;
+        this.maxPreInflatedViews = maxPreInflatedViews;
+    }
+
+    @Nullable
+    View take(@Nonnull Object key) {
+        pendingKeys.clear(); // navigation already happened, the hints will be recalculated for the new key
+        View view = preInflatedViews.remove(key);
+        if(view != null) {
+            hitCount++;
+        } else {
+            missCount++;
+        }
+        return view;
+    }
+
+    void scheduleFor(@Nonnull Object newKey, @Nonnull Context baseContext, @Nonnull ViewGroup container, @Nonnull StateChange stateChange, @Nonnull DefaultStateChanger.ContextCreationStrategy contextCreationStrategy, @Nonnull DefaultStateChanger.LayoutInflationStrategy layoutInflationStrategy) {
+        this.baseContext = baseContext;
+        this.container = container;
+        this.stateChange = stateChange;
+        this.contextCreationStrategy = contextCreationStrategy;
+        this.layoutInflationStrategy = layoutInflationStrategy;
+        generation++;
+
+        // the scopes that are not used by the new keys are destroyed once the state change is completed
+        Set<String> scopeTags = new HashSet<>();
+        for(Object key : stateChange.getNewKeys()) {
+            collectScopeTags(key, scopeTags);
+        }
+        availableScopeTags = scopeTags;
+
+        List<?> likelyNextKeys = hintProvider.getLikelyNextKeys(newKey);
+
+        Iterator<Map.Entry<Object, View>> iterator = preInflatedViews.entrySet().iterator();
+        while(iterator.hasNext()) {
+            Object key = iterator.next().getKey();
+            if(!likelyNextKeys.contains(key) || !hasAvailableScopes(key)) {
+                wastedInflationCount++;
+                iterator.remove();
+            }
+        }
+
+        pendingKeys.clear();
+        for(Object key : likelyNextKeys) {
+            if(pendingKeys.size() + preInflatedViews.size() >= maxPreInflatedViews) {
+                break;
+            }
+            if(!preInflatedViews.containsKey(key) && !key.equals(newKey) && hasAvailableScopes(key)) {
+                pendingKeys.add(key);
+            }
+        }
+
+        if(!pendingKeys.isEmpty() && !isIdleHandlerAdded) {
+            isIdleHandlerAdded = true;
+            Looper.myQueue().addIdleHandler(idleHandler);
+        }
+    }
+
+    private static void collectScopeTags(Object key, Set<String> scopeTags) {
+        if(key instanceof ScopeKey.Child) {
+            scopeTags.addAll(((ScopeKey.Child) key).getParentScopes());
+        }
+        if(key instanceof ScopeKey) {
+            scopeTags.add(((ScopeKey) key).getScopeTag());
+        }
+    }
+
+    private boolean hasAvailableScopes(Object key) {
+        Set<String> scopeTags = new HashSet<>();
+        collectScopeTags(key, scopeTags);
+        return availableScopeTags.containsAll(scopeTags);
+    }
+
+    private static boolean hasBuiltScopes(Backstack backstack, Object key) {
+        Set<String> scopeTags = new HashSet<>();
+        collectScopeTags(key, scopeTags);
+        for(String scopeTag : scopeTags) {
+            if(!backstack.hasScope(scopeTag)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void preInflate(final Object key) {
+        if(!hasBuiltScopes(stateChange.getBackstack(), key)) {
+            return; // for example, the scopes are built lazily
+        }
+        Context context = contextCreationStrategy.createContext(stateChange.createContext(baseContext, key), key, container, stateChange);
+        final int inflationGeneration = generation;
+        inflationCount++;
+        layoutInflationStrategy.inflateLayout(stateChange, key, context, container, new DefaultStateChanger.LayoutInflationStrategy.Callback() {
+            @Override
+            public void layoutInflationComplete(@Nonnull View view) {
+                if(inflationGeneration != generation) {
+                    wastedInflationCount++; // navigation happened while inflating
+                    return;
+                }
+                preInflatedViews.put(key, view);
+            }
+        });
+    }
+
+    /**
+     * Discards the pre-inflated views, and stops pre-inflation until the next view change.
+     */
+    public void clear() {
+        pendingKeys.clear();
+        wastedInflationCount += preInflatedViews.size();
+        preInflatedViews.clear();
+        availableScopeTags = Collections.emptySet();
+        generation++;
+        baseContext = null;
+        container = null;
+        stateChange = null;
+        contextCreationStrategy = null;
+        layoutInflationStrategy = null;
+    }
+
+    /**
+     * Returns the number of navigations that used a pre-inflated view.
+     *
+     * @return the hit count
+     */
+    public int getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Returns the number of navigations that did not have a pre-inflated view.
+     *
+     * @return the miss count
+     */
+    public int getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Returns the ratio of navigations that used a pre-inflated view.
+     *
+     * @return the hit rate, or 0 if there was no navigation yet
+     */
+    public float getHitRate() {
+        int total = hitCount + missCount;
+        return total == 0 ? 0f : (float) hitCount / total;
+    }
+
+    /**
+     * Returns the number of views that were pre-inflated.
+     *
+     * @return the inflation count
+     */
+    public int getInflationCount() {
+        return inflationCount;
+    }
+
+    /**
+     * Returns the number of pre-inflated views that were discarded without being used.
+     *
+     * @return the wasted inflation count
+     */
+    public int getWastedInflationCount() {
+        return wastedInflationCount;
+    }
+
+    /**
+     * Resets the hit, miss, and inflation counts.
+     */
+    public void resetMetrics() {
+        hitCount = 0;
+        missCount = 0;
+        inflationCount = 0;
+        wastedInflationCount = 0;
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright 2021 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.simplestack.navigator;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.os.Build;
+import android.view.Choreographer;
+import android.view.WindowManager;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Collects timing metrics of the view changes performed by {@link DefaultStateChanger}, aggregated per key class.
+ *
+ * When set with {@link DefaultStateChanger.Configurer#setTransitionMetrics(TransitionMetrics)}, each view change measures:
+ *
+ * - the inflation time (until the {@link DefaultStateChanger.LayoutInflationStrategy} provides the view),
+ * - the time spent restoring the view state,
+ * - the time spent waiting for the new view to be measured (reported by {@link ViewChangeHandler.TimedViewChangeCallback}),
+ * - the animation duration,
+ * - the frames rendered and dropped during the view change (from API 16, using a {@link Choreographer} frame callback).
+ *
+ * The results are reported to the {@link Listener}.
+ */
+public class TransitionMetrics {
+    /**
+     * Receives the metrics of each view change.
+     */
+    public interface Listener {
+        /**
+         * Called when a view change is complete.
+         *
+         * @param keyClass  the class of the new key
+         * @param sample    the metrics of this view change
+         * @param aggregate the aggregated metrics of view changes to this key class
+         */
+        void onTransitionMeasured(@Nonnull Class<?> keyClass, @Nonnull Sample sample, @Nonnull Aggregate aggregate);
+    }
+
+    /**
+     * The metrics of a single view change. Times are in nanoseconds.
+     */
+    public static class Sample {
+        long inflationNanos;
+        long restoreStateNanos;
+        long measureWaitNanos;
+        long animationNanos;
+        int frameCount;
+        int droppedFrameCount;
+
+        Sample() {
+        }
+
+        public long getInflationNanos() {
+            return inflationNanos;
+        }
+
+        public long getRestoreStateNanos() {
+            return restoreStateNanos;
+        }
+
+        public long getMeasureWaitNanos() {
+            return measureWaitNanos;
+        }
+
+        public long getAnimationNanos() {
+            return animationNanos;
+        }
+
+        public int getFrameCount() {
+            return frameCount;
+        }
+
+        public int getDroppedFrameCount() {
+            return droppedFrameCount;
+        }
+    }
+
+    /**
+     * The aggregated metrics of view changes to a given key class. Times are in nanoseconds.
+     */
+    public static class Aggregate {
+        int transitionCount;
+        long totalInflationNanos;
+        long maxInflationNanos;
+        long totalRestoreStateNanos;
+        long maxRestoreStateNanos;
+        long totalMeasureWaitNanos;
+        long maxMeasureWaitNanos;
+        long totalAnimationNanos;
+        long maxAnimationNanos;
+        int totalFrameCount;
+        int totalDroppedFrameCount;
+        int maxDroppedFrameCount;
+
+        Aggregate() {
+        }
+
+        void add(Sample sample) {
+            transitionCount++;
+            totalInflationNanos += sample.inflationNanos;
+            maxInflationNanos = Math.max(maxInflationNanos, sample.inflationNanos);
+            totalRestoreStateNanos += sample.restoreStateNanos;
+            maxRestoreStateNanos = Math.max(maxRestoreStateNanos, sample.restoreStateNanos);
+            totalMeasureWaitNanos += sample.measureWaitNanos;
+            maxMeasureWaitNanos = Math.max(maxMeasureWaitNanos, sample.measureWaitNanos);
+            totalAnimationNanos += sample.animationNanos;
+            maxAnimationNanos = Math.max(maxAnimationNanos, sample.animationNanos);
+            totalFrameCount += sample.frameCount;
+            totalDroppedFrameCount += sample.droppedFrameCount;
+            maxDroppedFrameCount = Math.max(maxDroppedFrameCount, sample.droppedFrameCount);
+        }
+
+        public int getTransitionCount() {
+            return transitionCount;
+        }
+
+        public long getAverageInflationNanos() {
+            return transitionCount == 0 ? 0 : totalInflationNanos / transitionCount;
+        }
+
+        public long getMaxInflationNanos() {
+            return maxInflationNanos;
+        }
+
+        public long getAverageRestoreStateNanos() {
+            return transitionCount == 0 ? 0 : totalRestoreStateNanos / transitionCount;
+        }
+
+        public long getMaxRestoreStateNanos() {
+            return maxRestoreStateNanos;
+        }
+
+        public long getAverageMeasureWaitNanos() {
+            return transitionCount == 0 ? 0 : totalMeasureWaitNanos / transitionCount;
+        }
+
+        public long getMaxMeasureWaitNanos() {
+            return maxMeasureWaitNanos;
+        }
+
+        public long getAverageAnimationNanos() {
+            return transitionCount == 0 ? 0 : totalAnimationNanos / transitionCount;
+        }
+
+        public long getMaxAnimationNanos() {
+            return maxAnimationNanos;
+        }
+
+        public int getTotalFrameCount() {
+            return totalFrameCount;
+        }
+
+        public int getTotalDroppedFrameCount() {
+            return totalDroppedFrameCount;
+        }
+
+        public int getMaxDroppedFrameCount() {
+            return maxDroppedFrameCount;
+        }
+
+        /**
+         * Returns the ratio of dropped frames to all expected frames during the view changes.
+         *
+         * @return the dropped frame ratio
+         */
+        public float getDroppedFrameRatio() {
+            int expectedFrames = totalFrameCount + totalDroppedFrameCount;
+            return expectedFrames == 0 ? 0f : (float) totalDroppedFrameCount / expectedFrames;
+        }
+    }
+
+    @TargetApi(16)
+    static class FrameCounter
+            implements Choreographer.FrameCallback {
+        private final Sample sample;
+        private final long frameIntervalNanos;
+
+        private long lastFrameTimeNanos = 0;
+        private boolean isRunning = true;
+
+        FrameCounter(Sample sample, long frameIntervalNanos) {
+            this.sample = sample;
+            this.frameIntervalNanos = frameIntervalNanos;
+        }
+
+        void start() {
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        void stop() {
+            isRunning = false;
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if(!isRunning) {
+                return;
+            }
+            if(lastFrameTimeNanos != 0) {
+                sample.frameCount++;
+                long skippedFrames = (frameTimeNanos - lastFrameTimeNanos) / frameIntervalNanos - 1;
+                if(skippedFrames > 0) {
+                    sample.droppedFrameCount += skippedFrames;
+                }
+            }
+            lastFrameTimeNanos = frameTimeNanos;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    private static final long DEFAULT_FRAME_INTERVAL_NANOS = 1000000000L / 60;
+
+    private final Listener listener;
+    private final Map<Class<?>, Aggregate> aggregates = new LinkedHashMap<>();
+
+    /**
+     * Creates the transition metrics.
+     *
+     * @param listener the listener that receives the metrics of each view change
+     */
+    public TransitionMetrics(@Nonnull Listener listener) {
+        //noinspection ConstantConditions
+        if(listener == null) {
+            throw new NullPointerException("listener cannot be null!");
+        }
+        this.listener = listener;
+    }
+
+    /**
+     * Returns the aggregated metrics of view changes to the given key class.
+     *
+     * @param keyClass the key class
+     * @return the aggregated metrics, or null if there was no view change to the key class
+     */
+    @Nullable
+    public Aggregate getAggregate(@Nonnull Class<?> keyClass) {
+        return aggregates.get(keyClass);
+    }
+
+    /**
+     * Returns the aggregated metrics of all key classes.
+     *
+     * @return the aggregated metrics per key class
+     */
+    @Nonnull
+    public Map<Class<?>, Aggregate> getAggregates() {
+        return Collections.unmodifiableMap(aggregates);
+    }
+
+    /**
+     * Clears the aggregated metrics.
+     */
+    public void reset() {
+        aggregates.clear();
+    }
+
+    Sample startSample() {
+        return new Sample();
+    }
+
+    @Nullable
+    Object startFrameCounter(@Nonnull Context context, @Nonnull Sample sample) {
+        if(Build.VERSION.SDK_INT < 16) {
+            return null;
+        }
+        FrameCounter frameCounter = new FrameCounter(sample, getFrameIntervalNanos(context));
+        frameCounter.start();
+        return frameCounter;
+    }
+
+    @TargetApi(16)
+    void stopFrameCounter(@Nullable Object frameCounter) {
+        if(frameCounter != null) {
+            ((FrameCounter) frameCounter).stop();
+        }
+    }
+
+    void finishSample(@Nonnull Object newKey, @Nonnull Sample sample) {
+        Class<?> keyClass = newKey.getClass();
+        Aggregate aggregate = aggregates.get(keyClass);
+        if(aggregate == null) {
+            aggregate = new Aggregate();
+            aggregates.put(keyClass, aggregate);
+        }
+        aggregate.add(sample);
+        listener.onTransitionMeasured(keyClass, sample, aggregate);
+    }
+
+    private static long getFrameIntervalNanos(Context context) {
+        WindowManager windowManager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+        if(windowManager != null) {
+            float refreshRate = windowManager.getDefaultDisplay().getRefreshRate();
+            if(refreshRate > 0) {
+                return (long) (1000000000L / refreshRate);
+            }
+        }
+        return DEFAULT_FRAME_INTERVAL_NANOS;
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright 2021 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.simplestack.navigator;
+
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
+import android.view.View;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * An LRU cache of detached views, keyed by the key they were inflated for.
+ *
+ * When set with {@link DefaultStateChanger.Configurer#setViewCache(ViewCache)}, the previous view is kept in the cache after a view change, and it is re-attached instead of being inflated when its key becomes the top key again.
+ * Only views of keys that are still in the history are retained: the views of removed keys are evicted on the next state change (as their scopes are destroyed), along with the views that are evicted by the capacity or the memory budget.
+ *
+ * The cache is invalidated when the configuration changes, and can be trimmed with {@link ViewCache#onTrimMemory(int)}.
+ */
+public class ViewCache {
+    /**
+     * Estimates the memory used by a cached view, used to enforce the memory budget.
+     */
+    public interface SizeEstimator {
+        /**
+         * Returns the estimated size of the view in bytes.
+         *
+         * @param key  the key the view belongs to
+         * @param view the view
+         * @return the estimated size
+         */
+        int estimateSize(@Nonnull Object key, @Nonnull View view);
+    }
+
+    private static class DefaultSizeEstimator
+            implements SizeEstimator {
+        @Override
+        public int estimateSize(@Nonnull Object key, @Nonnull View view) {
+            return view.getWidth() * view.getHeight() * 4; // roughly one ARGB_8888 frame of the view
+        }
+    }
+
+    private static class CachedView {
+        private final View view;
+        private final int size;
+
+        CachedView(View view, int size) {
+            this.view = view;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Specifies that the cached views are not limited by their estimated size.
+     */
+    public static final int NO_BYTE_LIMIT = -1;
+
+    private final int maxViews;
+    private final int maxBytes;
+    private final SizeEstimator sizeEstimator;
+
+    private final LinkedHashMap<Object, CachedView> cachedViews = new LinkedHashMap<>(); // in order of insertion
+    private int cachedBytes = 0;
+
+    private Configuration configuration;
+
+    /**
+     * Creates a view cache that retains at most the given number of views.
+     *
+     * @param maxViews the maximum number of cached views
+     */
+    public ViewCache(int maxViews) {
+        this(maxViews, NO_BYTE_LIMIT, null);
+    }
+
+    /**
+     * Creates a view cache that retains at most the given number of views, and at most the given number of bytes, estimated by the size of the views.
+     *
+     * @param maxViews the maximum number of cached views
+     * @param maxBytes the maximum estimated size of the cached views, or {@link ViewCache#NO_BYTE_LIMIT}
+     */
+    public ViewCache(int maxViews, int maxBytes) {
+        this(maxViews, maxBytes, null);
+    }
+
+    /**
+     * Creates a view cache that retains at most the given number of views, and at most the given number of bytes, estimated by the provided estimator.
+     *
+     * @param maxViews      the maximum number of cached views
+     * @param maxBytes      the maximum estimated size of the cached views, or {@link ViewCache#NO_BYTE_LIMIT}
+     * @param sizeEstimator the size estimator, if null then the size is estimated by the dimensions of the view
+     */
+    public ViewCache(int maxViews, int maxBytes, @Nullable SizeEstimator sizeEstimator) {
+        if(maxViews < 0) {
+            throw new IllegalArgumentException("The maximum number of cached views cannot be negative!");
+        }
+        if(maxBytes < 0 && maxBytes != NO_BYTE_LIMIT) {
+            throw new IllegalArgumentException("The maximum cached bytes must be either positive, or NO_BYTE_LIMIT!");
+        }
+        this.maxViews = maxViews;
+        this.maxBytes = maxBytes;
+        this.sizeEstimator = sizeEstimator != null ? sizeEstimator : new DefaultSizeEstimator();
+    }
+
+    /**
+     * Adds a detached view to the cache. If the view is still attached to a parent, it is not cached.
+     *
+     * @param key  the key the view belongs to
+     * @param view the view
+     */
+    public void put(@Nonnull Object key, @Nonnull View view) {
+        if(view.getParent() != null) {
+            return;
+        }
+        invalidateIfConfigurationChanged(view.getResources().getConfiguration());
+
+        remove(key);
+        int size = maxBytes == NO_BYTE_LIMIT ? 0 : sizeEstimator.estimateSize(key, view);
+        cachedViews.put(key, new CachedView(view, size));
+        cachedBytes += size;
+
+        trimToSize(maxViews);
+    }
+
+    /**
+     * Removes the cached view for the given key, if exists.
+     *
+     * @param key           the key
+     * @param configuration the current configuration, if it differs from the one the views were cached with, then the cache is cleared
+     * @return the cached view, or null
+     */
+    @Nullable
+    public View take(@Nonnull Object key, @Nonnull Configuration configuration) {
+        invalidateIfConfigurationChanged(configuration);
+        return remove(key);
+    }
+
+    @Nullable
+    private View remove(Object key) {
+        CachedView cachedView = cachedViews.remove(key);
+        if(cachedView == null) {
+            return null;
+        }
+        cachedBytes -= cachedView.size;
+        return cachedView.view;
+    }
+
+    private void invalidateIfConfigurationChanged(Configuration newConfiguration) {
+        if(configuration != null && configuration.diff(newConfiguration) != 0) {
+            clear();
+        }
+        configuration = new Configuration(newConfiguration);
+    }
+
+    /**
+     * Evicts the least recently cached views until at most the given number of views is cached (and the byte budget is satisfied).
+     *
+     * @param maxViews the maximum number of cached views to keep
+     */
+    public void trimToSize(int maxViews) {
+        Iterator<Map.Entry<Object, CachedView>> iterator = cachedViews.entrySet().iterator();
+        while(iterator.hasNext() && (cachedViews.size() > maxViews || (maxBytes != NO_BYTE_LIMIT && cachedBytes > maxBytes))) {
+            Map.Entry<Object, CachedView> entry = iterator.next();
+            cachedBytes -= entry.getValue().size;
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Evicts the cached views of the keys that are not in the provided keys, for example the keys that were removed from the history.
+     *
+     * @param keys the keys whose cached views are kept
+     */
+    public void retainKeys(@Nonnull Collection<?> keys) {
+        //noinspection ConstantConditions
+        if(keys == null) {
+            throw new NullPointerException("keys cannot be null!");
+        }
+        if(cachedViews.isEmpty()) {
+            return;
+        }
+        Set<?> retainedKeys = new HashSet<>(keys);
+        Iterator<Map.Entry<Object, CachedView>> iterator = cachedViews.entrySet().iterator();
+        while(iterator.hasNext()) {
+            Map.Entry<Object, CachedView> entry = iterator.next();
+            if(!retainedKeys.contains(entry.getKey())) {
+                cachedBytes -= entry.getValue().size;
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Clears all cached views.
+     */
+    public void clear() {
+        cachedViews.clear();
+        cachedBytes = 0;
+    }
+
+    /**
+     * Releases cached views based on the memory trim level received from {@link ComponentCallbacks2#onTrimMemory(int)}.
+     *
+     * Critical levels and hiding the UI clear all cached views, while moderate levels halve them.
+     *
+     * @param level the trim memory level
+     */
+    public void onTrimMemory(int level) {
+        if(level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            clear();
+        } else if(level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            trimToSize(cachedViews.size() / 2);
+        }
+    }
+
+    /**
+     * Returns the number of cached views.
+     *
+     * @return the number of cached views
+     */
+    public int getCachedViewCount() {
+        return cachedViews.size();
+    }
+
+    /**
+     * Returns the estimated size of the cached views. If there is no byte limit, then sizes are not estimated, and this returns 0.
+     *
+     * @return the estimated size of the cached views
+     */
+    public int getCachedBytes() {
+        return cachedBytes;
+    }
+}
@@ -33,6 +33,31 @@ public interface ViewChangeHandler {
         void onCompleted();
     }
 
+    /**
+     * If the callback provided to the {@link ViewChangeHandler} is a {@link TimedViewChangeCallback}, then the handler can signal when its animation starts, to allow measuring the view change.
+     */
+    interface TimedViewChangeCallback
+            extends ViewChangeCallback {
+        /**
+         * Called when the animation of the view change starts (for example, after the new view is measured).
+         */
+        void onAnimationStarted();
+    }
+
+    /**
+     * A {@link ViewChangeHandler} that implements {@link Interruptible} can end its view change immediately, when a new state change is enqueued during the view change.
+     */
+    interface Interruptible {
+        /**
+         * Ends the view change in progress in the given container immediately, jumping to its end state and calling the completion callback.
+         *
+         * If there is no view change in progress in the container, then this has no effect.
+         *
+         * @param container the container of the view change
+         */
+        void endViewChange(@Nonnull ViewGroup container);
+    }
+
     /**
      * Perform the view change. The previous view must be removed from the container, and the new view must be added to the container.
      * When complete, the completion callback must be called.
@@ -24,35 +24,74 @@ import android.view.animation.Interpolator;
 
 import com.zhuinden.simplestack.navigator.ViewChangeHandler;
 
+import java.util.Map;
+import java.util.WeakHashMap;
+
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 /**
  * Convenience base class to support view animations using Animator.
+ *
+ * If set to be interruptible with {@link AnimatorViewChangeHandler#setInterruptible(boolean)}, then the animation is ended immediately when a new state change is enqueued.
  */
 @TargetApi(11)
 public abstract class AnimatorViewChangeHandler
-        implements ViewChangeHandler {
+        implements ViewChangeHandler, ViewChangeHandler.Interruptible {
+    private static class RunningViewChange {
+        private Animator animator;
+        private boolean isEndRequested;
+    }
+
+    private final Map<ViewGroup, RunningViewChange> runningViewChanges = new WeakHashMap<>(); // handlers can be shared between containers
+
     @Override
     public void performViewChange(@Nonnull final ViewGroup container, @Nonnull final View previousView, @Nonnull final View newView, final int direction, @Nonnull final ViewChangeCallback viewChangeCallback) {
+        final RunningViewChange runningViewChange = new RunningViewChange();
+        runningViewChanges.put(container, runningViewChange);
         container.addView(newView);
         ViewUtils.waitForMeasure(newView, new ViewUtils.OnMeasuredCallback() {
             @Override
             public void onMeasured(View view, int width, int height) {
-                runAnimation(previousView, newView, direction, new AnimatorListenerAdapter() {
+                runningViewChange.animator = runAnimation(previousView, newView, direction, new AnimatorListenerAdapter() {
                     @Override
                     public void onAnimationEnd(Animator animation) {
+                        if(runningViewChanges.get(container) == runningViewChange) {
+                            runningViewChanges.remove(container);
+                        }
                         container.removeView(previousView);
                         resetPreviousViewValues(previousView);
                         viewChangeCallback.onCompleted();
                     }
                 });
+                if(viewChangeCallback instanceof TimedViewChangeCallback) {
+                    ((TimedViewChangeCallback) viewChangeCallback).onAnimationStarted();
+                }
+                if(runningViewChange.isEndRequested) {
+                    runningViewChange.animator.end();
+                }
             }
         });
     }
 
+    @Override
+    public void endViewChange(@Nonnull ViewGroup container) {
+        if(!interruptible) {
+            return;
+        }
+        RunningViewChange runningViewChange = runningViewChanges.get(container);
+        if(runningViewChange == null) {
+            return;
+        }
+        if(runningViewChange.animator != null) {
+            runningViewChange.animator.end(); // jumps to the end values, and calls onAnimationEnd
+        } else {
+            runningViewChange.isEndRequested = true; // ended as soon as it starts
+        }
+    }
+
     // animation
-    private void runAnimation(final View previousView, final View newView, int direction, AnimatorListenerAdapter animatorListenerAdapter) {
+    private Animator runAnimation(final View previousView, final View newView, int direction, AnimatorListenerAdapter animatorListenerAdapter) {
         Animator animator = createAnimator(previousView, newView, direction);
         animator.addListener(animatorListenerAdapter);
 
@@ -67,6 +106,7 @@ public abstract class AnimatorViewChangeHandler
         }
 
         animator.start();
+        return animator;
     }
 
     protected abstract Animator createAnimator(@Nonnull View previousView, @Nonnull View newView, int direction);
@@ -78,6 +118,8 @@ public abstract class AnimatorViewChangeHandler
 
     private Long duration = null;
 
+    private boolean interruptible = false;
+
     // fluff
 
     @Nullable
@@ -110,6 +152,15 @@ public abstract class AnimatorViewChangeHandler
         return this;
     }
 
+    public boolean isInterruptible() {
+        return interruptible;
+    }
+
+    public AnimatorViewChangeHandler setInterruptible(boolean interruptible) {
+        this.interruptible = interruptible;
+        return this;
+    }
+
     protected void resetPreviousViewValues(View previousView) {
         // override to use specific behavior
     }
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2021 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.simplestack.navigator.changehandlers;
+
+import android.annotation.TargetApi;
+import android.view.View;
+import android.view.ViewPropertyAnimator;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A fade animation using {@link ViewPropertyAnimator} with hardware layers.
+ */
+@TargetApi(16)
+public final class HardwareFadeViewChangeHandler
+        extends ViewPropertyAnimatorViewChangeHandler {
+    @Override
+    protected void setStartValues(@Nonnull View previousView, @Nonnull View newView, int direction) {
+        previousView.setAlpha(1f);
+        newView.setAlpha(0f);
+    }
+
+    @Override
+    protected void animatePreviousView(@Nonnull ViewPropertyAnimator animator, @Nonnull View previousView, int direction) {
+        animator.alpha(0f);
+    }
+
+    @Override
+    protected void animateNewView(@Nonnull ViewPropertyAnimator animator, @Nonnull View newView, int direction) {
+        animator.alpha(1f);
+    }
+
+    @Override
+    protected void resetViewValues(@Nonnull View view) {
+        view.setAlpha(1f);
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2021 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.simplestack.navigator.changehandlers;
+
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.annotation.TargetApi;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewPropertyAnimator;
+import android.view.animation.Interpolator;
+
+import com.zhuinden.simplestack.navigator.ViewChangeHandler;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Convenience base class to support view animations using {@link ViewPropertyAnimator}.
+ *
+ * Unlike {@link AnimatorViewChangeHandler}, the properties are animated directly without reflection, using the views' own animators,
+ * and the views are rendered into hardware layers during the animation (see {@link ViewPropertyAnimator#withLayer()}). The original layer types are restored when the animation ends.
+ *
+ * If set to be interruptible with {@link ViewPropertyAnimatorViewChangeHandler#setInterruptible(boolean)}, then the animation is ended immediately when a new state change is enqueued.
+ */
+@TargetApi(16)
+public abstract class ViewPropertyAnimatorViewChangeHandler
+        implements ViewChangeHandler, ViewChangeHandler.Interruptible {
+    private class RunningViewChange
+            extends AnimatorListenerAdapter {
+        private final ViewGroup container;
+        private final View previousView;
+        private final View newView;
+        private final ViewChangeCallback viewChangeCallback;
+        private final int previousViewLayerType;
+        private final int newViewLayerType;
+
+        private int runningAnimations = 0;
+        private boolean isStarted;
+        private boolean isEndRequested;
+        private boolean isCompleted;
+
+        RunningViewChange(ViewGroup container, View previousView, View newView, ViewChangeCallback viewChangeCallback) {
+            this.container = container;
+            this.previousView = previousView;
+            this.newView = newView;
+            this.viewChangeCallback = viewChangeCallback;
+            this.previousViewLayerType = previousView.getLayerType();
+            this.newViewLayerType = newView.getLayerType();
+        }
+
+        void start(int direction) {
+            isStarted = true;
+            if(isEndRequested) {
+                complete();
+                return;
+            }
+            setStartValues(previousView, newView, direction);
+            runningAnimations = 2;
+            animatePreviousView(configure(previousView.animate()), previousView, direction);
+            animateNewView(configure(newView.animate()), newView, direction);
+        }
+
+        private ViewPropertyAnimator configure(ViewPropertyAnimator animator) {
+            animator.setListener(this).withLayer();
+            if(duration != null) {
+                animator.setDuration(duration);
+            }
+            if(interpolator != null) {
+                animator.setInterpolator(interpolator);
+            }
+            animator.setStartDelay(startDelay != null ? startDelay : 0); // the animator of the view keeps its previous start delay
+            return animator;
+        }
+
+        void end() {
+            if(!isStarted) {
+                isEndRequested = true; // ended as soon as it is measured
+                return;
+            }
+            isEndRequested = true;
+            previousView.animate().cancel();
+            newView.animate().cancel();
+            complete(); // a cancelled animation that did not start yet does not call onAnimationEnd
+        }
+
+        @Override
+        public void onAnimationEnd(Animator animation) {
+            runningAnimations--;
+            if(runningAnimations == 0) {
+                complete();
+            }
+        }
+
+        private void complete() {
+            if(isCompleted) {
+                return;
+            }
+            isCompleted = true;
+            if(runningViewChanges.get(container) == this) {
+                runningViewChanges.remove(container);
+            }
+            previousView.animate().setListener(null); // the animators belong to the views, and are reused
+            newView.animate().setListener(null);
+
+            container.removeView(previousView);
+            resetViewValues(previousView);
+            if(isEndRequested) {
+                resetViewValues(newView); // jump to the end state
+            }
+            previousView.setLayerType(previousViewLayerType, null);
+            newView.setLayerType(newViewLayerType, null);
+            viewChangeCallback.onCompleted();
+        }
+    }
+
+    private final Map<ViewGroup, RunningViewChange> runningViewChanges = new WeakHashMap<>(); // handlers can be shared between containers
+
+    @Override
+    public void performViewChange(@Nonnull ViewGroup container, @Nonnull View previousView, @Nonnull View newView, final int direction, @Nonnull final ViewChangeCallback viewChangeCallback) {
+        final RunningViewChange runningViewChange = new RunningViewChange(container, previousView, newView, viewChangeCallback);
+        runningViewChanges.put(container, runningViewChange);
+        container.addView(newView);
+        ViewUtils.waitForMeasure(newView, new ViewUtils.OnMeasuredCallback() {
+            @Override
+            public void onMeasured(View view, int width, int height) {
+                if(viewChangeCallback instanceof TimedViewChangeCallback) {
+                    ((TimedViewChangeCallback) viewChangeCallback).onAnimationStarted();
+                }
+                runningViewChange.start(direction);
+            }
+        });
+    }
+
+    @Override
+    public void endViewChange(@Nonnull ViewGroup container) {
+        if(!interruptible) {
+            return;
+        }
+        RunningViewChange runningViewChange = runningViewChanges.get(container);
+        if(runningViewChange != null) {
+            runningViewChange.end();
+        }
+    }
+
+    /**
+     * Sets the values of the views before the animation starts.
+     *
+     * @param previousView the previous view
+     * @param newView      the new view
+     * @param direction    the direction
+     */
+    protected abstract void setStartValues(@Nonnull View previousView, @Nonnull View newView, int direction);
+
+    /**
+     * Configures the animation of the previous view. The animation is started by the caller.
+     *
+     * @param animator     the animator of the previous view
+     * @param previousView the previous view
+     * @param direction    the direction
+     */
+    protected abstract void animatePreviousView(@Nonnull ViewPropertyAnimator animator, @Nonnull View previousView, int direction);
+
+    /**
+     * Configures the animation of the new view. The animation is started by the caller.
+     *
+     * @param animator  the animator of the new view
+     * @param newView   the new view
+     * @param direction the direction
+     */
+    protected abstract void animateNewView(@Nonnull ViewPropertyAnimator animator, @Nonnull View newView, int direction);
+
+    /**
+     * Resets the animated values of the view to their resting state. Called for the previous view after it is removed, and for the new view if the animation is ended early.
+     *
+     * @param view the view
+     */
+    protected abstract void resetViewValues(@Nonnull View view);
+
+    // stuff
+    private Long startDelay = null;
+
+    private Interpolator interpolator = null;
+
+    private Long duration = null;
+
+    private boolean interruptible = false;
+
+    // fluff
+
+    @Nullable
+    public Long getStartDelay() {
+        return startDelay;
+    }
+
+    public ViewPropertyAnimatorViewChangeHandler setStartDelay(@Nullable Long startDelay) {
+        this.startDelay = startDelay;
+        return this;
+    }
+
+    @Nullable
+    public Interpolator getInterpolator() {
+        return interpolator;
+    }
+
+    public ViewPropertyAnimatorViewChangeHandler setInterpolator(@Nullable Interpolator interpolator) {
+        this.interpolator = interpolator;
+        return this;
+    }
+
+    @Nullable
+    public Long getDuration() {
+        return duration;
+    }
+
+    public ViewPropertyAnimatorViewChangeHandler setDuration(@Nullable Long duration) {
+        this.duration = duration;
+        return this;
+    }
+
+    public boolean isInterruptible() {
+        return interruptible;
+    }
+
+    public ViewPropertyAnimatorViewChangeHandler setInterruptible(boolean interruptible) {
+        this.interruptible = interruptible;
+        return this;
+    }
+}
@@ -17,6 +17,7 @@ package com.zhuinden.simplestack;
 
 import android.content.Context;
 import android.os.Parcelable;
+import android.util.SparseArray;
 import android.view.View;
 
 import com.zhuinden.simplestack.helpers.ServiceProvider;
@@ -1058,4 +1059,38 @@ public class BackstackTest {
             // OK!
         }
     }
+
+    @Test
+    public void persistViewToStateSkipsCleanDirtyTrackingViews() {
+        TestKey first = new TestKey("first");
+
+        View view = Mockito.mock(View.class, Mockito.withSettings().extraInterfaces(DirtyTrackingView.class));
+        Context context = Mockito.mock(Context.class);
+        Mockito.when(view.getContext()).thenReturn(context);
+        Mockito.when(context.getSystemService(KeyContextWrapper.TAG)).thenReturn(first);
+
+        Backstack backstack = new Backstack();
+        backstack.setup(History.of(first));
+        backstack.setStateChanger(new StateChanger() {
+            @Override
+            public void handleStateChange(@Nonnull StateChange stateChange, @Nonnull Callback completionCallback) {
+                completionCallback.stateChangeComplete();
+            }
+        });
+
+        DirtyTrackingView dirtyTrackingView = (DirtyTrackingView) view;
+        Mockito.when(dirtyTrackingView.isStateDirty()).thenReturn(false);
+
+        backstack.persistViewToState(view); // never persisted before
+        backstack.persistViewToState(view);
+
+        Mockito.verify(view, Mockito.times(1)).saveHierarchyState(Mockito.<SparseArray<Parcelable>>any());
+        Mockito.verify(dirtyTrackingView, Mockito.times(1)).clearStateDirty();
+
+        Mockito.when(dirtyTrackingView.isStateDirty()).thenReturn(true);
+
+        backstack.persistViewToState(view);
+
+        Mockito.verify(view, Mockito.times(2)).saveHierarchyState(Mockito.<SparseArray<Parcelable>>any());
+    }
 }
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2021 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.simplestack;
+
+import android.content.ComponentCallbacks2;
+import android.os.Parcel;
+
+import com.zhuinden.simplestack.helpers.ServiceProvider;
+import com.zhuinden.simplestack.helpers.TestKeyWithScope;
+import com.zhuinden.statebundle.StateBundle;
+
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BackstackTrimMemoryTest {
+    private static class ReleasableService
+            implements ScopedServices.Releasable {
+        private String data;
+        private boolean released;
+
+        ReleasableService(String data) {
+            this.data = data;
+        }
+
+        @Override
+        public void onServiceReleased() {
+            released = true;
+            data = null;
+        }
+
+        @Nonnull
+        @Override
+        public StateBundle toBundle() {
+            StateBundle stateBundle = new StateBundle();
+            stateBundle.putString("data", data);
+            return stateBundle;
+        }
+
+        @Override
+        public void fromBundle(@Nullable StateBundle bundle) {
+            released = false;
+            if(bundle != null) {
+                data = bundle.getString("data");
+            }
+        }
+    }
+
+    private static class RetainedObject
+            implements Bundleable {
+        private String data;
+
+        RetainedObject(String data) {
+            this.data = data;
+        }
+
+        @Nonnull
+        @Override
+        public StateBundle toBundle() {
+            StateBundle stateBundle = new StateBundle();
+            stateBundle.putString("data", data);
+            return stateBundle;
+        }
+
+        @Override
+        public void fromBundle(@Nullable StateBundle bundle) {
+            if(bundle != null) {
+                data = bundle.getString("data");
+            }
+        }
+    }
+
+    private static class Key
+            extends TestKeyWithScope {
+        private final ReleasableService service;
+
+        Key(String name, ReleasableService service) {
+            super(name);
+            this.service = service;
+        }
+
+        protected Key(Parcel in) {
+            super(in);
+            this.service = null;
+        }
+
+        @Override
+        public void bindServices(ServiceBinder serviceBinder) {
+            serviceBinder.addService("service", service);
+        }
+    }
+
+    private final StateChanger stateChanger = new StateChanger() {
+        @Override
+        public void handleStateChange(@Nonnull StateChange stateChange, @Nonnull Callback completionCallback) {
+            completionCallback.stateChangeComplete();
+        }
+    };
+
+    @Test
+    public void inactiveReleasableServicesAreReleasedAndRehydratedOnLookup() {
+        ReleasableService service1 = new ReleasableService("hello");
+        ReleasableService service2 = new ReleasableService("world");
+
+        Key key1 = new Key("key1", service1);
+        Key key2 = new Key("key2", service2);
+
+        Backstack backstack = new Backstack();
+        backstack.setScopedServices(new ServiceProvider());
+        backstack.setup(History.of(key1, key2));
+        backstack.setStateChanger(stateChanger);
+
+        backstack.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+
+        assertThat(service1.released).isTrue();
+        assertThat(service1.data).isNull();
+        assertThat(service2.released).isFalse();
+
+        ReleasableService lookedUpService = backstack.getService(key1, "service");
+        assertThat(lookedUpService).isSameAs(service1);
+        assertThat(service1.released).isFalse();
+        assertThat(service1.data).isEqualTo("hello");
+    }
+
+    @Test
+    public void releasedServicesAreRehydratedWhenTheirScopeBecomesActive() {
+        ReleasableService service1 = new ReleasableService("hello");
+        ReleasableService service2 = new ReleasableService("world");
+
+        Key key1 = new Key("key1", service1);
+        Key key2 = new Key("key2", service2);
+
+        Backstack backstack = new Backstack();
+        backstack.setScopedServices(new ServiceProvider());
+        backstack.setup(History.of(key1, key2));
+        backstack.setStateChanger(stateChanger);
+
+        backstack.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+        assertThat(service1.released).isTrue();
+
+        backstack.goBack();
+
+        assertThat(service1.released).isFalse();
+        assertThat(service1.data).isEqualTo("hello");
+    }
+
+    @Test
+    public void uiHiddenDoesNotReleaseServices() {
+        ReleasableService service1 = new ReleasableService("hello");
+        ReleasableService service2 = new ReleasableService("world");
+
+        Backstack backstack = new Backstack();
+        backstack.setScopedServices(new ServiceProvider());
+        backstack.setup(History.of(new Key("key1", service1), new Key("key2", service2)));
+        backstack.setStateChanger(stateChanger);
+
+        backstack.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+
+        assertThat(service1.released).isFalse();
+    }
+
+    @Test
+    public void softRetainedObjectsAreEvictedAndTheirStateIsRestoredWhenReAdded() {
+        Backstack backstack = new Backstack();
+
+        Object strongObject = new Object();
+        backstack.addRetainedObject("strong", strongObject);
+        backstack.addRetainedObject("soft", new RetainedObject("hello"), RetentionTier.EVICT_ON_TRIM);
+
+        backstack.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+
+        assertThat(backstack.hasRetainedObject("strong")).isTrue();
+        assertThat(backstack.hasRetainedObject("soft")).isFalse();
+
+        RetainedObject reAdded = new RetainedObject(null);
+        backstack.addRetainedObject("soft", reAdded, RetentionTier.EVICT_ON_TRIM);
+        assertThat(reAdded.data).isEqualTo("hello");
+    }
+}
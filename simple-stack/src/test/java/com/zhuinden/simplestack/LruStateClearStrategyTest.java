@@ -0,0 +1,159 @@
+/*
+ * Copyright 2021 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.simplestack;
+
+import android.content.ComponentCallbacks2;
+
+import com.zhuinden.simplestack.helpers.ImmediateStateChanger;
+import com.zhuinden.simplestack.helpers.TestKey;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LruStateClearStrategyTest {
+    private final Map<Object, SavedState> keyStateMap = new LinkedHashMap<>();
+
+    private void putState(Object key) {
+        keyStateMap.put(key, Mockito.mock(SavedState.class));
+    }
+
+    private void completeStateChange(LruStateClearStrategy strategy, List<Object> previousKeys, List<Object> newKeys) {
+        for(Object key : newKeys) {
+            if(!keyStateMap.containsKey(key)) {
+                putState(key);
+            }
+        }
+        strategy.clearStatesNotIn(keyStateMap, new StateChange(null, previousKeys, newKeys, StateChange.REPLACE));
+    }
+
+    @Test
+    public void removedStatesAreRetainedAndRevived() {
+        TestKey a = new TestKey("a");
+        TestKey b = new TestKey("b");
+
+        LruStateClearStrategy strategy = new LruStateClearStrategy(2);
+
+        completeStateChange(strategy, Collections.emptyList(), Arrays.<Object>asList(a, b));
+        SavedState savedState = keyStateMap.get(b);
+
+        completeStateChange(strategy, Arrays.<Object>asList(a, b), Arrays.<Object>asList(a));
+        assertThat(strategy.getRetainedStateCount()).isEqualTo(1);
+        assertThat(keyStateMap).containsKey(b);
+
+        completeStateChange(strategy, Arrays.<Object>asList(a), Arrays.<Object>asList(a, b));
+        assertThat(strategy.getRetainedStateCount()).isEqualTo(0);
+        assertThat(keyStateMap.get(b)).isSameAs(savedState);
+    }
+
+    @Test
+    public void leastRecentlyRemovedStatesAreEvictedFirst() {
+        TestKey a = new TestKey("a");
+        TestKey b = new TestKey("b");
+        TestKey c = new TestKey("c");
+        TestKey d = new TestKey("d");
+
+        LruStateClearStrategy strategy = new LruStateClearStrategy(2);
+
+        completeStateChange(strategy, Collections.emptyList(), Arrays.<Object>asList(a, b));
+        completeStateChange(strategy, Arrays.<Object>asList(a, b), Arrays.<Object>asList(a, c));
+        completeStateChange(strategy, Arrays.<Object>asList(a, c), Arrays.<Object>asList(a, d));
+        completeStateChange(strategy, Arrays.<Object>asList(a, d), Arrays.<Object>asList(a));
+
+        assertThat(strategy.getRetainedStateCount()).isEqualTo(2);
+        assertThat(keyStateMap).doesNotContainKey(b);
+        assertThat(keyStateMap).containsKeys(a, c, d);
+    }
+
+    @Test
+    public void byteBudgetEvictsStates() {
+        TestKey a = new TestKey("a");
+        TestKey b = new TestKey("b");
+        TestKey c = new TestKey("c");
+
+        LruStateClearStrategy strategy = new LruStateClearStrategy(10, 150, new LruStateClearStrategy.SizeEstimator() {
+            @Override
+            public int estimateSize(@Nonnull SavedState savedState) {
+                return 100;
+            }
+        });
+
+        completeStateChange(strategy, Collections.emptyList(), Arrays.<Object>asList(a, b, c));
+        completeStateChange(strategy, Arrays.<Object>asList(a, b, c), Arrays.<Object>asList(a));
+
+        assertThat(strategy.getRetainedStateCount()).isEqualTo(1);
+        assertThat(strategy.getRetainedBytes()).isEqualTo(100);
+        assertThat(keyStateMap).containsKey(c);
+        assertThat(keyStateMap).doesNotContainKey(b);
+    }
+
+    @Test
+    public void trimMemoryClearsRetainedStates() {
+        TestKey a = new TestKey("a");
+        TestKey b = new TestKey("b");
+        TestKey c = new TestKey("c");
+
+        LruStateClearStrategy strategy = new LruStateClearStrategy(5);
+
+        completeStateChange(strategy, Collections.emptyList(), Arrays.<Object>asList(a, b, c));
+        completeStateChange(strategy, Arrays.<Object>asList(a, b, c), Arrays.<Object>asList(a));
+        assertThat(strategy.getRetainedStateCount()).isEqualTo(2);
+
+        strategy.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+        assertThat(strategy.getRetainedStateCount()).isEqualTo(1);
+        assertThat(keyStateMap).containsKey(c);
+
+        strategy.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+        assertThat(strategy.getRetainedStateCount()).isEqualTo(0);
+        assertThat(keyStateMap).containsOnlyKeys(a);
+    }
+
+    @Test
+    public void retainedStatesAreNotPersistedToBundle() {
+        TestKey a = new TestKey("a");
+        TestKey b = new TestKey("b");
+
+        LruStateClearStrategy strategy = new LruStateClearStrategy(2);
+
+        Backstack backstack = new Backstack();
+        backstack.setStateClearStrategy(strategy);
+        backstack.setup(History.of(a, b));
+        backstack.setStateChanger(new ImmediateStateChanger());
+
+        SavedState savedState = Mockito.mock(SavedState.class);
+        Mockito.when(savedState.getKey()).thenReturn(a);
+        backstack.keyStateMap.put(a, savedState);
+        SavedState removedSavedState = Mockito.mock(SavedState.class);
+        Mockito.when(removedSavedState.getKey()).thenReturn(b);
+        backstack.keyStateMap.put(b, removedSavedState);
+
+        backstack.goBack();
+        assertThat(strategy.getRetainedStateCount()).isEqualTo(1);
+
+        List<ParcelledState> parcelledStates = backstack.toBundle().getParcelableArrayList(Backstack.getStatesTag());
+        assertThat(parcelledStates).hasSize(1);
+        assertThat(parcelledStates.get(0).parcelableKey).isEqualTo(a);
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2021 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.simplestack;
+
+import android.content.ComponentCallbacks2;
+
+import com.zhuinden.simplestack.helpers.ServiceProvider;
+import com.zhuinden.simplestack.helpers.TestKey;
+import com.zhuinden.simplestack.helpers.TestKeyWithScope;
+import com.zhuinden.statebundle.StateBundle;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MultistackTest {
+    private final List<StateChange> stateChanges = new ArrayList<>();
+
+    private final StateChanger stateChanger = new StateChanger() {
+        @Override
+        public void handleStateChange(@Nonnull StateChange stateChange, @Nonnull Callback completionCallback) {
+            stateChanges.add(stateChange);
+            completionCallback.stateChangeComplete();
+        }
+    };
+
+    private static class ScopedKey
+            extends TestKeyWithScope {
+        ScopedKey(String name) {
+            super(name);
+        }
+
+        @Override
+        public void bindServices(ServiceBinder serviceBinder) {
+            serviceBinder.addService("service", new Object());
+        }
+    }
+
+    @Test
+    public void backstacksAreCreatedWhenFirstSelected() {
+        final List<String> initializedStacks = new ArrayList<>();
+        Multistack multistack = new Multistack(new Multistack.BackstackInitializer() {
+            @Override
+            public void initializeBackstack(@Nonnull String identifier, @Nonnull Backstack backstack) {
+                initializedStacks.add(identifier);
+                backstack.setScopedServices(new ServiceProvider());
+            }
+        });
+        multistack.add("first", History.of(new ScopedKey("first")));
+        multistack.add("second", History.of(new ScopedKey("second")));
+        multistack.add("third", History.of(new ScopedKey("third")));
+
+        assertThat(initializedStacks).isEmpty();
+
+        multistack.setStateChanger(stateChanger);
+
+        assertThat(initializedStacks).containsExactly("first");
+        assertThat(multistack.isCreated("second")).isFalse();
+        assertThat(multistack.getSelectedStack().hasScope("first")).isTrue();
+
+        multistack.setSelectedStack("second");
+
+        assertThat(initializedStacks).containsExactly("first", "second");
+        assertThat(multistack.isCreated("third")).isFalse();
+        assertThat(multistack.get("second").hasScope("second")).isTrue();
+    }
+
+    @Test
+    public void onlySelectedStackHasStateChanger() {
+        Multistack multistack = new Multistack();
+        multistack.add("first", History.of(new TestKey("first")));
+        multistack.add("second", History.of(new TestKey("second")));
+        multistack.setStateChanger(stateChanger);
+
+        multistack.setSelectedStack("second");
+
+        assertThat(multistack.get("first").hasStateChanger()).isFalse();
+        assertThat(multistack.get("second").hasStateChanger()).isTrue();
+
+        multistack.detachStateChanger();
+
+        assertThat(multistack.get("second").hasStateChanger()).isFalse();
+
+        multistack.setSelectedStack("first");
+
+        assertThat(multistack.get("first").hasStateChanger()).isFalse();
+
+        multistack.reattachStateChanger();
+
+        assertThat(multistack.get("first").hasStateChanger()).isTrue();
+        assertThat(multistack.get("second").hasStateChanger()).isFalse();
+    }
+
+    @Test
+    public void stackStatesArePersistedSeparately() {
+        Multistack multistack = new Multistack();
+        multistack.add("first", History.of(new TestKey("first")));
+        multistack.add("second", History.of(new TestKey("second")));
+        multistack.setStateChanger(stateChanger);
+        multistack.getSelectedStack().goTo(new TestKey("first-detail"));
+
+        StateBundle stateBundle = multistack.toBundle();
+
+        Multistack restoredMultistack = new Multistack();
+        restoredMultistack.add("first", History.of(new TestKey("first")));
+        restoredMultistack.add("second", History.of(new TestKey("second")));
+        restoredMultistack.fromBundle(stateBundle);
+
+        assertThat(restoredMultistack.isCreated("first")).isFalse();
+
+        StateBundle unchangedBundle = restoredMultistack.toBundle(); // the state of stacks that were not created is kept
+
+        Multistack finalMultistack = new Multistack();
+        finalMultistack.add("first", History.of(new TestKey("first")));
+        finalMultistack.add("second", History.of(new TestKey("second")));
+        finalMultistack.fromBundle(unchangedBundle);
+        finalMultistack.setStateChanger(stateChanger);
+
+        assertThat(finalMultistack.getSelectedStack().getHistory()).containsExactly(new TestKey("first"), new TestKey("first-detail"));
+        assertThat(finalMultistack.isCreated("second")).isFalse();
+    }
+
+    @Test
+    public void hibernatedStackIsRestoredWhenReselected() {
+        final List<String> hibernatedStacks = new ArrayList<>();
+        final List<String> rehydratedStacks = new ArrayList<>();
+        Multistack multistack = new Multistack(new Multistack.BackstackInitializer() {
+            @Override
+            public void initializeBackstack(@Nonnull String identifier, @Nonnull Backstack backstack) {
+                backstack.setScopedServices(new ServiceProvider());
+            }
+        });
+        multistack.setHibernationListener(new Multistack.HibernationListener() {
+            @Override
+            public void onStackHibernated(@Nonnull String identifier, long nanos) {
+                hibernatedStacks.add(identifier);
+            }
+
+            @Override
+            public void onStackRehydrated(@Nonnull String identifier, long nanos) {
+                rehydratedStacks.add(identifier);
+            }
+        });
+        multistack.add("first", History.of(new ScopedKey("first")));
+        multistack.add("second", History.of(new ScopedKey("second")));
+        multistack.setStateChanger(stateChanger);
+        multistack.getSelectedStack().goTo(new TestKey("first-detail"));
+        Backstack firstBackstack = multistack.getSelectedStack();
+
+        multistack.setSelectedStack("second");
+        multistack.hibernate("first");
+
+        assertThat(hibernatedStacks).containsExactly("first");
+        assertThat(multistack.isHibernated("first")).isTrue();
+        assertThat(multistack.isCreated("first")).isFalse();
+        assertThat(firstBackstack.hasScope("first")).isFalse();
+
+        multistack.setSelectedStack("first");
+
+        assertThat(rehydratedStacks).containsExactly("first");
+        assertThat(multistack.isHibernated("first")).isFalse();
+        assertThat(multistack.getSelectedStack().getHistory()).containsExactly(new ScopedKey("first"), new TestKey("first-detail"));
+        assertThat(multistack.getSelectedStack().hasScope("first")).isTrue();
+    }
+
+    @Test
+    public void idleAndTrimmedStacksAreHibernated() {
+        Multistack multistack = new Multistack();
+        multistack.add("first", History.of(new TestKey("first")));
+        multistack.add("second", History.of(new TestKey("second")));
+        multistack.add("third", History.of(new TestKey("third")));
+        multistack.setStateChanger(stateChanger);
+
+        multistack.setSelectedStack("second");
+
+        assertThat(multistack.isHibernated("first")).isFalse();
+
+        multistack.setHibernationIdleTime(0);
+        multistack.setSelectedStack("third");
+
+        assertThat(multistack.isHibernated("first")).isTrue();
+        assertThat(multistack.isHibernated("second")).isTrue();
+        assertThat(multistack.isHibernated("third")).isFalse();
+
+        multistack.setHibernationIdleTime(Multistack.NO_HIBERNATION);
+        multistack.setSelectedStack("first");
+
+        assertThat(multistack.isHibernated("third")).isFalse();
+
+        multistack.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+
+        assertThat(multistack.isHibernated("third")).isTrue();
+        assertThat(multistack.isHibernated("first")).isFalse();
+    }
+
+    @Test
+    public void deselectedStacksAreHibernatedAfterIdleTimeWithoutSelectionChange() {
+        final List<Runnable> scheduledRunnables = new ArrayList<>();
+        final List<Long> scheduledTimes = new ArrayList<>();
+        final long[] currentTime = new long[]{0};
+        Multistack.HibernationScheduler hibernationScheduler = new Multistack.HibernationScheduler() {
+            @Override
+            public void schedule(@Nonnull Runnable runnable, long delayMillis) {
+                scheduledRunnables.add(runnable);
+                scheduledTimes.add(currentTime[0] + delayMillis);
+            }
+
+            @Override
+            public void cancel(@Nonnull Runnable runnable) {
+                int index = scheduledRunnables.indexOf(runnable);
+                if(index != -1) {
+                    scheduledRunnables.remove(index);
+                    scheduledTimes.remove(index);
+                }
+            }
+        };
+
+        Multistack multistack = new Multistack();
+        multistack.add("first", History.of(new TestKey("first")));
+        multistack.add("second", History.of(new TestKey("second")));
+        multistack.setHibernationIdleTime(1000, hibernationScheduler);
+        multistack.setStateChanger(stateChanger);
+
+        multistack.setSelectedStack("second");
+        multistack.setSelectedStack("first"); // cancels the hibernation of the first stack
+        multistack.setSelectedStack("second");
+
+        currentTime[0] = 500;
+        assertThat(scheduledTimes).containsExactly(1000L);
+
+        currentTime[0] = 1000;
+        for(int i = scheduledRunnables.size() - 1; i >= 0; i--) {
+            if(scheduledTimes.get(i) <= currentTime[0]) {
+                scheduledTimes.remove(i);
+                scheduledRunnables.remove(i).run();
+            }
+        }
+
+        assertThat(multistack.isHibernated("first")).isTrue();
+        assertThat(multistack.isHibernated("second")).isFalse();
+        assertThat(multistack.getSelectedStackIdentifier()).isEqualTo("second");
+        assertThat(scheduledRunnables).isEmpty();
+    }
+}
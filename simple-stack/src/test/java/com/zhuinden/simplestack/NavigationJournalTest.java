@@ -0,0 +1,322 @@
+/*
+ * Copyright 2021 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.simplestack;
+
+import com.zhuinden.simplestack.helpers.TestKey;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class NavigationJournalTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // the records of single pushes of one-letter keys start at these positions
+    private static final int FIRST_RECORD_POSITION = 8;
+    private static final int RECORD_SIZE = 4 + 1 + 4 + 4 + 4 + 1;
+
+    private static final int MAGIC = 0x53534a31;
+
+    private final NavigationJournal.KeyCodec keyCodec = new NavigationJournal.KeyCodec() {
+        @Override
+        public byte[] encode(Object key) {
+            return ((TestKey) key).name.getBytes(UTF_8);
+        }
+
+        @Override
+        public Object decode(byte[] encodedKey) {
+            return new TestKey(new String(encodedKey, UTF_8));
+        }
+    };
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private void record(NavigationJournal journal, List<?> previousKeys, List<?> newKeys) {
+        //noinspection unchecked
+        journal.stateChangeCompleted(new StateChange(null, (List<Object>) previousKeys, (List<Object>) newKeys, StateChange.REPLACE));
+    }
+
+    // the checkpoint that compact() writes before it updates the journal header
+    private void writeCheckpoint(File directory, int generation, TestKey... keys)
+            throws Exception {
+        DataOutputStream outputStream = new DataOutputStream(new FileOutputStream(new File(directory, "navigation.checkpoint")));
+        try {
+            outputStream.writeInt(MAGIC);
+            outputStream.writeInt(generation);
+            outputStream.writeInt(keys.length);
+            for(TestKey key : keys) {
+                byte[] encodedKey = keyCodec.encode(key);
+                outputStream.writeInt(encodedKey.length);
+                outputStream.write(encodedKey);
+            }
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    private List<Object> restore(File directory) {
+        return new NavigationJournal(directory, keyCodec, NavigationJournal.DEFAULT_JOURNAL_SIZE, NavigationJournal.DEFAULT_MAX_OPERATIONS).restoreHistory();
+    }
+
+    @Test
+    public void recordedOperationsAreReplayed()
+            throws Exception {
+        File directory = temporaryFolder.newFolder();
+        TestKey a = new TestKey("a");
+        TestKey b = new TestKey("b");
+        TestKey c = new TestKey("c");
+        TestKey d = new TestKey("d");
+
+        NavigationJournal journal = new NavigationJournal(directory, keyCodec, NavigationJournal.DEFAULT_JOURNAL_SIZE, NavigationJournal.DEFAULT_MAX_OPERATIONS);
+        record(journal, Collections.emptyList(), Arrays.asList(a));
+        record(journal, Arrays.asList(a), Arrays.asList(a, b));
+        record(journal, Arrays.asList(a, b), Arrays.asList(a, b, c));
+        record(journal, Arrays.asList(a, b, c), Arrays.asList(a, b));
+        record(journal, Arrays.asList(a, b), Arrays.asList(a, d));
+        journal.awaitPendingWrites();
+        journal.close();
+
+        assertThat(restore(directory)).containsExactly(a, d);
+    }
+
+    @Test
+    public void nothingIsRestoredWithoutJournal()
+            throws Exception {
+        assertThat(restore(temporaryFolder.newFolder())).isNull();
+    }
+
+    @Test
+    public void journalIsCompactedAfterMaxOperations()
+            throws Exception {
+        File directory = temporaryFolder.newFolder();
+        TestKey a = new TestKey("a");
+        TestKey b = new TestKey("b");
+        TestKey c = new TestKey("c");
+        TestKey d = new TestKey("d");
+
+        NavigationJournal journal = new NavigationJournal(directory, keyCodec, NavigationJournal.DEFAULT_JOURNAL_SIZE, 2);
+        record(journal, Collections.emptyList(), Arrays.asList(a));
+        record(journal, Arrays.asList(a), Arrays.asList(a, b));
+        record(journal, Arrays.asList(a, b), Arrays.asList(a, b, c));
+        record(journal, Arrays.asList(a, b, c), Arrays.asList(a, b, c, d)); // compacted
+        record(journal, Arrays.asList(a, b, c, d), Arrays.asList(a, b, c));
+        journal.awaitPendingWrites();
+        journal.close();
+
+        assertThat(restore(directory)).containsExactly(a, b, c);
+    }
+
+    @Test
+    public void journalIsCompactedWhenFull()
+            throws Exception {
+        File directory = temporaryFolder.newFolder();
+        TestKey a = new TestKey("a");
+        TestKey b = new TestKey("b");
+        TestKey c = new TestKey("c");
+        TestKey d = new TestKey("d");
+
+        NavigationJournal journal = new NavigationJournal(directory, keyCodec, FIRST_RECORD_POSITION + RECORD_SIZE + 4, NavigationJournal.DEFAULT_MAX_OPERATIONS);
+        record(journal, Collections.emptyList(), Arrays.asList(a));
+        record(journal, Arrays.asList(a), Arrays.asList(a, b));
+        record(journal, Arrays.asList(a, b), Arrays.asList(a, b, c)); // compacted
+        record(journal, Arrays.asList(a, b, c), Arrays.asList(a, b, c, d));
+        journal.awaitPendingWrites();
+        journal.close();
+
+        assertThat(restore(directory)).containsExactly(a, b, c, d);
+    }
+
+    @Test
+    public void corruptedRecordRestoresUntilLastValidRecord()
+            throws Exception {
+        File directory = temporaryFolder.newFolder();
+        TestKey a = new TestKey("a");
+        TestKey b = new TestKey("b");
+        TestKey c = new TestKey("c");
+
+        NavigationJournal journal = new NavigationJournal(directory, keyCodec, NavigationJournal.DEFAULT_JOURNAL_SIZE, NavigationJournal.DEFAULT_MAX_OPERATIONS);
+        record(journal, Collections.emptyList(), Arrays.asList(a));
+        record(journal, Arrays.asList(a), Arrays.asList(a, b));
+        record(journal, Arrays.asList(a, b), Arrays.asList(a, b, c));
+        journal.awaitPendingWrites();
+        journal.close();
+
+        RandomAccessFile file = new RandomAccessFile(new File(directory, "navigation.journal"), "rw");
+        try {
+            file.seek(FIRST_RECORD_POSITION + RECORD_SIZE + 4 + 1); // pop count of the second record
+            file.writeInt(5);
+        } finally {
+            file.close();
+        }
+
+        assertThat(restore(directory)).containsExactly(a, b);
+    }
+
+    @Test
+    public void truncatedRecordRestoresUntilLastValidRecord()
+            throws Exception {
+        File directory = temporaryFolder.newFolder();
+        TestKey a = new TestKey("a");
+        TestKey b = new TestKey("b");
+        TestKey c = new TestKey("c");
+
+        NavigationJournal journal = new NavigationJournal(directory, keyCodec, NavigationJournal.DEFAULT_JOURNAL_SIZE, NavigationJournal.DEFAULT_MAX_OPERATIONS);
+        record(journal, Collections.emptyList(), Arrays.asList(a));
+        record(journal, Arrays.asList(a), Arrays.asList(a, b));
+        record(journal, Arrays.asList(a, b), Arrays.asList(a, b, c));
+        journal.awaitPendingWrites();
+        journal.close();
+
+        RandomAccessFile file = new RandomAccessFile(new File(directory, "navigation.journal"), "rw");
+        try {
+            file.seek(FIRST_RECORD_POSITION + RECORD_SIZE + 4 + 1 + 4); // key count of the second record
+            file.writeInt(3);
+        } finally {
+            file.close();
+        }
+
+        assertThat(restore(directory)).containsExactly(a, b);
+    }
+
+    @Test
+    public void crashAfterCheckpointBeforeJournalHeaderDoesNotReplayRecordsTwice()
+            throws Exception {
+        File directory = temporaryFolder.newFolder();
+        TestKey a = new TestKey("a");
+        TestKey b = new TestKey("b");
+        TestKey c = new TestKey("c");
+
+        NavigationJournal journal = new NavigationJournal(directory, keyCodec, NavigationJournal.DEFAULT_JOURNAL_SIZE, NavigationJournal.DEFAULT_MAX_OPERATIONS);
+        record(journal, Collections.emptyList(), Arrays.asList(a)); // checkpoint of generation 1
+        record(journal, Arrays.asList(a), Arrays.asList(a, b));
+        record(journal, Arrays.asList(a, b), Arrays.asList(a, b, c));
+        journal.awaitPendingWrites();
+        journal.close();
+
+        writeCheckpoint(directory, 2, a, b, c); // the journal header still has generation 1
+
+        assertThat(restore(directory)).containsExactly(a, b, c);
+
+        RandomAccessFile file = new RandomAccessFile(new File(directory, "navigation.journal"), "rw");
+        try {
+            file.seek(FIRST_RECORD_POSITION); // the old records are terminated before the header is updated
+            file.writeInt(0);
+        } finally {
+            file.close();
+        }
+
+        assertThat(restore(directory)).containsExactly(a, b, c);
+
+        file = new RandomAccessFile(new File(directory, "navigation.journal"), "rw");
+        try {
+            file.seek(4);
+            file.writeInt(2);
+        } finally {
+            file.close();
+        }
+
+        assertThat(restore(directory)).containsExactly(a, b, c);
+    }
+
+    @Test
+    public void corruptedCheckpointRestoresNothing()
+            throws Exception {
+        File directory = temporaryFolder.newFolder();
+        TestKey a = new TestKey("a");
+        TestKey b = new TestKey("b");
+
+        NavigationJournal journal = new NavigationJournal(directory, keyCodec, NavigationJournal.DEFAULT_JOURNAL_SIZE, NavigationJournal.DEFAULT_MAX_OPERATIONS);
+        record(journal, Collections.emptyList(), Arrays.asList(a));
+        record(journal, Arrays.asList(a), Arrays.asList(a, b));
+        journal.awaitPendingWrites();
+        journal.close();
+
+        FileOutputStream outputStream = new FileOutputStream(new File(directory, "navigation.checkpoint"));
+        try {
+            outputStream.write(new byte[]{1, 2, 3});
+        } finally {
+            outputStream.close();
+        }
+
+        assertThat(restore(directory)).isNull();
+    }
+
+    @Test
+    public void journalRecoversAfterWriteFailure()
+            throws Exception {
+        File directory = new File(temporaryFolder.getRoot(), "journal");
+        assertThat(directory.mkdir()).isTrue();
+        TestKey a = new TestKey("a");
+        TestKey b = new TestKey("b");
+        TestKey c = new TestKey("c");
+        TestKey d = new TestKey("d");
+
+        NavigationJournal journal = new NavigationJournal(directory, keyCodec, NavigationJournal.DEFAULT_JOURNAL_SIZE, 1);
+        record(journal, Collections.emptyList(), Arrays.asList(a));
+        record(journal, Arrays.asList(a), Arrays.asList(a, b));
+        journal.awaitPendingWrites();
+
+        for(File file : directory.listFiles()) {
+            assertThat(file.delete()).isTrue();
+        }
+        assertThat(directory.delete()).isTrue();
+
+        record(journal, Arrays.asList(a, b), Arrays.asList(a, b, c)); // the checkpoint cannot be written
+        journal.awaitPendingWrites();
+
+        assertThat(restore(directory)).isNull();
+
+        assertThat(directory.mkdir()).isTrue();
+        record(journal, Arrays.asList(a, b, c), Arrays.asList(a, b, c, d));
+        journal.awaitPendingWrites();
+        journal.close();
+
+        assertThat(restore(directory)).containsExactly(a, b, c, d);
+    }
+
+    @Test
+    public void clearedJournalRestoresNothingAndKeepsRecording()
+            throws Exception {
+        File directory = temporaryFolder.newFolder();
+        TestKey a = new TestKey("a");
+        TestKey b = new TestKey("b");
+
+        NavigationJournal journal = new NavigationJournal(directory, keyCodec, NavigationJournal.DEFAULT_JOURNAL_SIZE, NavigationJournal.DEFAULT_MAX_OPERATIONS);
+        record(journal, Collections.emptyList(), Arrays.asList(a));
+        journal.clear();
+        journal.awaitPendingWrites();
+
+        assertThat(restore(directory)).isNull();
+
+        record(journal, Arrays.asList(a), Arrays.asList(b));
+        journal.awaitPendingWrites();
+        journal.close();
+
+        assertThat(restore(directory)).containsExactly(b);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2021 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.simplestack;
+
+import com.zhuinden.simplestack.helpers.ImmediateStateChanger;
+import com.zhuinden.simplestack.helpers.ServiceProvider;
+import com.zhuinden.simplestack.helpers.TestKey;
+import com.zhuinden.simplestack.helpers.TestKeyWithScope;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.Nonnull;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class NavigationSnapshotTest {
+    private static class ChildKey
+            extends TestKeyWithScope
+            implements ScopeKey.Child {
+        ChildKey(String name) {
+            super(name);
+        }
+
+        @Override
+        public void bindServices(ServiceBinder serviceBinder) {
+        }
+
+        @Nonnull
+        @Override
+        public List<String> getParentScopes() {
+            return Arrays.asList("parent1", "parent2");
+        }
+    }
+
+    @Test
+    public void snapshotIsPublishedForEachCompletedStateChange() {
+        Backstack backstack = new Backstack();
+        backstack.setScopedServices(new ServiceProvider());
+        backstack.setup(History.of(new TestKey("hello")));
+
+        assertThat(backstack.getNavigationSnapshot().getVersion()).isEqualTo(0L);
+        assertThat(backstack.getNavigationSnapshot().getHistory()).isEmpty();
+        assertThat(backstack.getNavigationSnapshot().<Object>getTop()).isNull();
+
+        backstack.setStateChanger(new ImmediateStateChanger());
+
+        NavigationSnapshot initialSnapshot = backstack.getNavigationSnapshot();
+        assertThat(initialSnapshot.getVersion()).isEqualTo(1L);
+        assertThat(initialSnapshot.getHistory()).containsExactly(new TestKey("hello"));
+        assertThat(initialSnapshot.getActiveScopeTags()).isEmpty();
+
+        backstack.goTo(new ChildKey("child"));
+        backstack.goTo(new TestKey("world"));
+
+        NavigationSnapshot snapshot = backstack.getNavigationSnapshot();
+        assertThat(snapshot.getVersion()).isEqualTo(3L);
+        assertThat(snapshot.<Object>getTop()).isEqualTo(new TestKey("world"));
+        assertThat(snapshot.getHistory()).containsExactly(new TestKey("hello"), new ChildKey("child"), new TestKey("world"));
+        assertThat(snapshot.getActiveScopeTags()).containsExactly("parent1", "parent2", "child");
+
+        assertThat(initialSnapshot.getHistory()).containsExactly(new TestKey("hello")); // previous snapshots do not change
+    }
+
+    @Test
+    public void snapshotCanBeReadFromAnyThread()
+            throws InterruptedException {
+        final Backstack backstack = new Backstack();
+        backstack.setup(History.of(new TestKey("hello")));
+        backstack.setStateChanger(new ImmediateStateChanger());
+
+        final AtomicReference<Object> top = new AtomicReference<>();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                top.set(backstack.getNavigationSnapshot().getTop());
+            }
+        });
+        thread.start();
+        thread.join();
+
+        assertThat(top.get()).isEqualTo(new TestKey("hello"));
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2021 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.simplestack;
+
+import com.zhuinden.simplestack.helpers.ImmediateStateChanger;
+import com.zhuinden.simplestack.helpers.TestKey;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import javax.annotation.Nonnull;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PreloadedGlobalServicesTest {
+    private final Executor directExecutor = new Executor() {
+        @Override
+        public void execute(@Nonnull Runnable runnable) {
+            runnable.run();
+        }
+    };
+
+    private final List<Object> createdServices = new ArrayList<>();
+
+    private final PreloadedGlobalServices.Loader loader = new PreloadedGlobalServices.Loader() {
+        @Nonnull
+        @Override
+        public GlobalServices load() {
+            Object service = new Object();
+            createdServices.add(service);
+            return GlobalServices.builder().addService("service", service).build();
+        }
+    };
+
+    @Test
+    public void preloadedServicesAreUsedByBackstack() {
+        PreloadedGlobalServices preloadedGlobalServices = PreloadedGlobalServices.preload(directExecutor, loader);
+
+        assertThat(preloadedGlobalServices.isDone()).isTrue();
+        assertThat(createdServices).hasSize(1);
+
+        Backstack backstack = new Backstack();
+        backstack.setGlobalServices(preloadedGlobalServices);
+        backstack.setup(History.of(new TestKey("hello")));
+        backstack.setStateChanger(new ImmediateStateChanger());
+
+        assertThat(backstack.<Object>lookupService("service")).isSameAs(createdServices.get(0));
+        assertThat(preloadedGlobalServices.getWaitTimeNanos()).isEqualTo(0L);
+
+        backstack.finalizeScopes();
+        backstack.goTo(new TestKey("world"));
+
+        assertThat(createdServices).hasSize(2);
+        assertThat(backstack.<Object>lookupService("service")).isSameAs(createdServices.get(1));
+    }
+
+    @Test
+    public void preloadingFailureIsThrownWhenGlobalScopeIsCreated() {
+        final IllegalStateException failure = new IllegalStateException("Failed!");
+        PreloadedGlobalServices preloadedGlobalServices = PreloadedGlobalServices.preload(directExecutor, new PreloadedGlobalServices.Loader() {
+            @Nonnull
+            @Override
+            public GlobalServices load() {
+                throw failure;
+            }
+        });
+
+        Backstack backstack = new Backstack();
+        backstack.setGlobalServices(preloadedGlobalServices);
+        backstack.setup(History.of(new TestKey("hello")));
+
+        try {
+            backstack.setStateChanger(new ImmediateStateChanger());
+            Assert.fail();
+        } catch(IllegalStateException e) {
+            assertThat(e).isSameAs(failure);
+        }
+    }
+}
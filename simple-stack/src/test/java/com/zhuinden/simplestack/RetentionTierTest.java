@@ -0,0 +1,97 @@
+/*
+ * Copyright 2021 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.simplestack;
+
+import android.content.ComponentCallbacks2;
+
+import com.zhuinden.statebundle.StateBundle;
+
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RetentionTierTest {
+    private static class Cache
+            implements Bundleable {
+        private String data;
+
+        Cache(String data) {
+            this.data = data;
+        }
+
+        @Nonnull
+        @Override
+        public StateBundle toBundle() {
+            StateBundle stateBundle = new StateBundle();
+            stateBundle.putString("data", data);
+            return stateBundle;
+        }
+
+        @Override
+        public void fromBundle(@Nullable StateBundle bundle) {
+            if(bundle != null) {
+                data = bundle.getString("data");
+            }
+        }
+    }
+
+    private final Backstack.RetainedObjectSizeEstimator sizeEstimator = new Backstack.RetainedObjectSizeEstimator() {
+        @Override
+        public int estimateSize(@Nonnull Object retainedObject) {
+            return 100;
+        }
+    };
+
+    @Test
+    public void budgetEvictsLeastRecentlyUsedEvictableObjects() {
+        Backstack backstack = new Backstack();
+        backstack.setRetainedObjectBudget(250);
+
+        backstack.addRetainedObject("strong", new Object(), RetentionTier.STRONG, sizeEstimator);
+        backstack.addRetainedObject("a", new Cache("a"), RetentionTier.EVICT_ON_TRIM, sizeEstimator);
+        backstack.addRetainedObject("b", new Cache("b"), RetentionTier.EVICT_ON_TRIM, sizeEstimator);
+
+        assertThat(backstack.hasRetainedObject("a")).isFalse();
+        assertThat(backstack.getRetainedObjectBytes()).isEqualTo(200);
+
+        backstack.getRetainedObject("strong");
+        backstack.addRetainedObject("c", new Cache("c"), RetentionTier.SOFT, sizeEstimator);
+
+        assertThat(backstack.hasRetainedObject("strong")).isTrue();
+        assertThat(backstack.hasRetainedObject("b")).isFalse();
+        assertThat(backstack.hasRetainedObject("c")).isTrue();
+
+        Cache reAdded = new Cache(null);
+        backstack.addRetainedObject("a", reAdded, RetentionTier.EVICT_ON_TRIM);
+        assertThat(reAdded.data).isEqualTo("a");
+    }
+
+    @Test
+    public void evictedStatesArePersisted() {
+        Backstack backstack = new Backstack();
+        backstack.setup(History.of("hello"));
+
+        backstack.addRetainedObject("cache", new Cache("data"), RetentionTier.EVICT_ON_TRIM);
+        backstack.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+        assertThat(backstack.hasRetainedObject("cache")).isFalse();
+
+        StateBundle retainedStates = backstack.toBundle().getBundle(Backstack.getRetainedObjectStatesTag());
+        assertThat(retainedStates.getBundle("cache").getString("data")).isEqualTo("data");
+    }
+}
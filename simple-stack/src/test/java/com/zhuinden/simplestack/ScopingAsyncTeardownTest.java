@@ -0,0 +1,118 @@
+/*
+ * Copyright 2021 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.simplestack;
+
+import com.zhuinden.simplestack.helpers.ImmediateStateChanger;
+import com.zhuinden.simplestack.helpers.ServiceProvider;
+import com.zhuinden.simplestack.helpers.TestKeyWithScope;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import javax.annotation.Nonnull;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ScopingAsyncTeardownTest {
+    private final List<Runnable> teardowns = new ArrayList<>();
+
+    private final Executor teardownExecutor = new Executor() {
+        @Override
+        public void execute(@Nonnull Runnable runnable) {
+            teardowns.add(runnable);
+        }
+    };
+
+    private final List<String> events = new ArrayList<>();
+
+    private class Service
+            implements ScopedServices.Registered, ScopedServices.UnregisteredAsync {
+        private final String name;
+
+        Service(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void onServiceRegistered() {
+        }
+
+        @Override
+        public void onServiceUnregistered() {
+            events.add(name + " unregistered");
+        }
+
+        @Override
+        public void onServiceUnregisteredAsync() {
+            events.add(name + " unregistered async");
+        }
+    }
+
+    private class Key
+            extends TestKeyWithScope {
+        Key(String name) {
+            super(name);
+        }
+
+        @Override
+        public void bindServices(ServiceBinder serviceBinder) {
+            Service first = new Service(name + "1");
+            serviceBinder.addService("first", first);
+            serviceBinder.addAlias("alias", first);
+            serviceBinder.addService("second", new Service(name + "2"));
+        }
+    }
+
+    @Test
+    public void asyncTeardownIsExecutedAfterStateChangeInReverseOrder() {
+        Backstack backstack = new Backstack();
+        backstack.setScopedServices(new ServiceProvider());
+        backstack.setTeardownExecutor(teardownExecutor);
+        backstack.setup(History.of(new Key("a"), new Key("b")));
+        backstack.setStateChanger(new ImmediateStateChanger());
+
+        backstack.goBack();
+
+        assertThat(events).containsExactly("b2 unregistered", "b1 unregistered");
+        assertThat(teardowns).hasSize(1);
+
+        teardowns.remove(0).run();
+
+        assertThat(events).containsExactly("b2 unregistered", "b1 unregistered", "b2 unregistered async", "b1 unregistered async");
+    }
+
+    @Test
+    public void finalizedScopesAreTornDownInOrder() {
+        Backstack backstack = new Backstack();
+        backstack.setScopedServices(new ServiceProvider());
+        backstack.setTeardownExecutor(teardownExecutor);
+        backstack.setup(History.of(new Key("a"), new Key("b")));
+        backstack.setStateChanger(new ImmediateStateChanger());
+
+        backstack.finalizeScopes();
+
+        assertThat(teardowns).hasSize(2);
+        for(Runnable teardown : teardowns) {
+            teardown.run();
+        }
+
+        assertThat(events).containsExactly("b2 unregistered", "b1 unregistered", "a2 unregistered", "a1 unregistered",
+                "b2 unregistered async", "b1 unregistered async", "a2 unregistered async", "a1 unregistered async");
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2021 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.simplestack;
+
+import com.zhuinden.simplestack.helpers.ImmediateStateChanger;
+import com.zhuinden.simplestack.helpers.TestKey;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ScopingDeclaredServicesTest {
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    private final List<String> registeredServices = new ArrayList<>();
+
+    private final CountDownLatch independentServicesLatch = new CountDownLatch(2);
+
+    private class Service
+            implements ScopedServices.Registered {
+        private final String name;
+        private final List<Object> dependencies = new ArrayList<>();
+
+        private Service(String name, Object... dependencies) {
+            this.name = name;
+            for(Object dependency : dependencies) {
+                this.dependencies.add(dependency);
+            }
+        }
+
+        @Override
+        public void onServiceRegistered() {
+            assertThat(Thread.currentThread()).isSameAs(testThread);
+            registeredServices.add(name);
+        }
+
+        @Override
+        public void onServiceUnregistered() {
+        }
+    }
+
+    private final Thread testThread = Thread.currentThread();
+
+    private class IndependentServiceFactory
+            implements ServiceBinder.ServiceFactory<Service> {
+        private final String name;
+
+        IndependentServiceFactory(String name) {
+            this.name = name;
+        }
+
+        @Nonnull
+        @Override
+        public Service createService(@Nonnull ServiceBinder.Dependencies dependencies) {
+            independentServicesLatch.countDown();
+            try {
+                if(!independentServicesLatch.await(5, TimeUnit.SECONDS)) { // both are created at the same time
+                    throw new IllegalStateException("The independent services were not created concurrently!");
+                }
+            } catch(InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return new Service(name, dependencies.get("direct"));
+        }
+    }
+
+    private static class Key
+            extends TestKey
+            implements ScopeKey {
+        Key(String name) {
+            super(name);
+        }
+
+        @Nonnull
+        @Override
+        public String getScopeTag() {
+            return name;
+        }
+    }
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void independentServicesAreCreatedConcurrentlyAndAddedInDeclarationOrder() {
+        final Service directService = new Service("direct");
+        Backstack backstack = new Backstack();
+        backstack.setScopedServices(new ScopedServices() {
+            @Override
+            public void bindServices(@Nonnull ServiceBinder serviceBinder) {
+                serviceBinder.declareService("dependent", new ServiceBinder.ServiceFactory<Service>() {
+                    @Nonnull
+                    @Override
+                    public Service createService(@Nonnull ServiceBinder.Dependencies dependencies) {
+                        return new Service("dependent", dependencies.get("first"), dependencies.get("second"));
+                    }
+                }, "first", "second");
+                serviceBinder.declareService("first", new IndependentServiceFactory("first"), "direct");
+                serviceBinder.declareService("second", new IndependentServiceFactory("second"), "direct");
+                serviceBinder.addService("direct", directService);
+            }
+        });
+        backstack.setServiceExecutor(executor);
+        backstack.setup(History.of(new Key("scope")));
+        backstack.setStateChanger(new ImmediateStateChanger());
+
+        Service first = backstack.lookupService("first");
+        Service second = backstack.lookupService("second");
+        Service dependent = backstack.lookupService("dependent");
+
+        assertThat(first.dependencies).containsExactly(directService);
+        assertThat(second.dependencies).containsExactly(directService);
+        assertThat(dependent.dependencies).containsExactly(first, second);
+        assertThat(registeredServices).containsExactly("direct", "dependent", "first", "second");
+    }
+
+    @Test
+    public void cyclicDependenciesAreNotAllowed() {
+        final ServiceBinder.ServiceFactory<Object> factory = new ServiceBinder.ServiceFactory<Object>() {
+            @Nonnull
+            @Override
+            public Object createService(@Nonnull ServiceBinder.Dependencies dependencies) {
+                return new Object();
+            }
+        };
+        Backstack backstack = new Backstack();
+        backstack.setScopedServices(new ScopedServices() {
+            @Override
+            public void bindServices(@Nonnull ServiceBinder serviceBinder) {
+                serviceBinder.declareService("first", factory, "second");
+                serviceBinder.declareService("second", factory, "first");
+            }
+        });
+        backstack.setServiceExecutor(executor);
+        backstack.setup(History.of(new Key("scope")));
+
+        try {
+            backstack.setStateChanger(new ImmediateStateChanger());
+            Assert.fail();
+        } catch(IllegalArgumentException e) {
+            assertThat(e.getMessage()).contains("cyclic");
+        }
+    }
+
+    @Test
+    public void missingDependenciesAreNotAllowed() {
+        Backstack backstack = new Backstack();
+        backstack.setScopedServices(new ScopedServices() {
+            @Override
+            public void bindServices(@Nonnull ServiceBinder serviceBinder) {
+                serviceBinder.declareService("first", new ServiceBinder.ServiceFactory<Object>() {
+                    @Nonnull
+                    @Override
+                    public Object createService(@Nonnull ServiceBinder.Dependencies dependencies) {
+                        return new Object();
+                    }
+                }, "missing");
+            }
+        });
+        backstack.setServiceExecutor(executor);
+        backstack.setup(History.of(new Key("scope")));
+
+        try {
+            backstack.setStateChanger(new ImmediateStateChanger());
+            Assert.fail();
+        } catch(IllegalArgumentException e) {
+            assertThat(e.getMessage()).contains("missing");
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2021 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.simplestack;
+
+import com.zhuinden.simplestack.helpers.ImmediateStateChanger;
+import com.zhuinden.simplestack.helpers.TestKey;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ScopingExitScopeIndexTest {
+    private static class Key
+            extends TestKey
+            implements ScopeKey {
+        Key(String name) {
+            super(name);
+        }
+
+        @Nonnull
+        @Override
+        public String getScopeTag() {
+            return name;
+        }
+    }
+
+    private static class ChildKey
+            extends TestKey
+            implements ScopeKey.Child {
+        private final List<String> parentScopes;
+
+        ChildKey(String name, String... parentScopes) {
+            super(name);
+            this.parentScopes = Arrays.asList(parentScopes);
+        }
+
+        @Nonnull
+        @Override
+        public List<String> getParentScopes() {
+            return parentScopes;
+        }
+    }
+
+    private static class ScopedChildKey
+            extends ChildKey
+            implements ScopeKey {
+        ScopedChildKey(String name, String... parentScopes) {
+            super(name, parentScopes);
+        }
+
+        @Nonnull
+        @Override
+        public String getScopeTag() {
+            return name;
+        }
+    }
+
+    private static final ScopedServices scopedServices = new ScopedServices() {
+        @Override
+        public void bindServices(@Nonnull ServiceBinder serviceBinder) {
+        }
+    };
+
+    // the behavior of exitScope() before the scope key ranges were indexed
+    private static History<Object> exitScopeByRemoveUntil(Backstack backstack, String scopeTag) {
+        History<Object> keys = backstack.getHistory();
+        Object candidateKey = keys.get(0);
+        for(Object key : keys) {
+            if(backstack.findScopesForKey(key, ScopeLookupMode.EXPLICIT).contains(scopeTag)) {
+                break;
+            }
+            candidateKey = key;
+        }
+        return History.builderFrom(keys).removeUntil(candidateKey).build();
+    }
+
+    // the behavior of exitScopeTo() before the scope key ranges were indexed
+    private static History<Object> exitScopeToByRemoveUntil(Backstack backstack, String scopeTag, Object targetKey) {
+        History<Object> keys = backstack.getHistory();
+        Object candidateKey = keys.get(0);
+        for(Object key : keys) {
+            if(backstack.findScopesForKey(key, ScopeLookupMode.EXPLICIT).contains(scopeTag)) {
+                break;
+            }
+            candidateKey = key;
+        }
+        History.Builder builder = History.builderFrom(keys).removeUntil(candidateKey);
+        if(backstack.findScopesForKey(builder.get(0), ScopeLookupMode.EXPLICIT).contains(scopeTag)) {
+            builder.removeAt(0);
+        }
+        if(!builder.contains(targetKey)) {
+            builder.add(targetKey);
+        } else {
+            builder.removeUntil(targetKey);
+        }
+        return builder.build();
+    }
+
+    private static Backstack setupBackstack(List<?> keys) {
+        Backstack backstack = new Backstack();
+        backstack.setScopedServices(scopedServices);
+        backstack.setup(keys);
+        backstack.setStateChanger(new ImmediateStateChanger());
+        return backstack;
+    }
+
+    private static void assertExitScopeMatchesRemoveUntil(Backstack backstack, String scopeTag) {
+        History<Object> expected = exitScopeByRemoveUntil(backstack, scopeTag);
+        backstack.exitScope(scopeTag);
+        assertThat(backstack.getHistory()).containsExactlyElementsOf(expected);
+    }
+
+    private static void assertExitScopeToMatchesRemoveUntil(Backstack backstack, String scopeTag, Object targetKey) {
+        History<Object> expected = exitScopeToByRemoveUntil(backstack, scopeTag, targetKey);
+        backstack.exitScopeTo(scopeTag, targetKey, StateChange.BACKWARD);
+        assertThat(backstack.getHistory()).containsExactlyElementsOf(expected);
+    }
+
+    @Test
+    public void exitScopeWithExplicitParentsMatchesRemoveUntil() {
+        List<Object> keys = History.<Object>of(
+                new Key("root"),
+                new ChildKey("a", "p1", "p2"),
+                new Key("b"),
+                new ScopedChildKey("c", "p2", "p3"),
+                new Key("d"));
+
+        for(String scopeTag : Arrays.asList("root", "p1", "p2", "p3", "b", "c", "d")) {
+            assertExitScopeMatchesRemoveUntil(setupBackstack(keys), scopeTag);
+            assertExitScopeToMatchesRemoveUntil(setupBackstack(keys), scopeTag, new Key("e"));
+            assertExitScopeToMatchesRemoveUntil(setupBackstack(keys), scopeTag, new Key("b"));
+            assertExitScopeToMatchesRemoveUntil(setupBackstack(keys), scopeTag, new Key("root"));
+        }
+    }
+
+    @Test
+    public void exitScopeWithNestedChildrenMatchesRemoveUntil() {
+        List<Object> keys = History.<Object>of(
+                new Key("root"),
+                new ScopedChildKey("outer", "p"),
+                new ScopedChildKey("inner", "p", "outer"),
+                new ChildKey("leaf", "p", "outer", "inner"));
+
+        for(String scopeTag : Arrays.asList("root", "p", "outer", "inner")) {
+            assertExitScopeMatchesRemoveUntil(setupBackstack(keys), scopeTag);
+            assertExitScopeToMatchesRemoveUntil(setupBackstack(keys), scopeTag, new Key("e"));
+            assertExitScopeToMatchesRemoveUntil(setupBackstack(keys), scopeTag, new Key("root"));
+        }
+    }
+
+    @Test
+    public void exitScopeAfterReRegistrationMatchesRemoveUntil() {
+        Backstack backstack = setupBackstack(History.of(new Key("root"), new ChildKey("a", "p"), new ChildKey("b", "p"), new Key("c")));
+
+        backstack.setHistory(History.of(new Key("root"), new ChildKey("b", "p"), new ChildKey("d", "p"), new Key("c")), StateChange.REPLACE);
+
+        assertExitScopeMatchesRemoveUntil(backstack, "p"); // the scope is still registered by a removed key
+
+        backstack.setHistory(History.of(new Key("root"), new Key("c"), new ChildKey("e", "p")), StateChange.REPLACE);
+
+        assertExitScopeMatchesRemoveUntil(backstack, "p"); // the scope is registered again, after the scope of another key
+
+        backstack.setHistory(History.of(new Key("root"), new ChildKey("e", "p"), new Key("c"), new ScopedChildKey("f", "c")), StateChange.REPLACE);
+
+        assertExitScopeToMatchesRemoveUntil(backstack, "c", new ChildKey("e", "p"));
+    }
+}
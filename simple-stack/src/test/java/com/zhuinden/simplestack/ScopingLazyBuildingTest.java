@@ -0,0 +1,194 @@
+/*
+ * Copyright 2021 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.simplestack;
+
+import com.zhuinden.simplestack.helpers.ImmediateStateChanger;
+import com.zhuinden.simplestack.helpers.ServiceProvider;
+import com.zhuinden.simplestack.helpers.TestKey;
+import com.zhuinden.simplestack.helpers.TestKeyWithScope;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ScopingLazyBuildingTest {
+    private final List<String> registeredScopes = new ArrayList<>();
+
+    private class Service
+            implements ScopedServices.Registered {
+        private final String scopeTag;
+
+        Service(String scopeTag) {
+            this.scopeTag = scopeTag;
+        }
+
+        @Override
+        public void onServiceRegistered() {
+            registeredScopes.add(scopeTag);
+        }
+
+        @Override
+        public void onServiceUnregistered() {
+            registeredScopes.remove(scopeTag);
+        }
+    }
+
+    private static class SharedService {
+        private final String scopeTag;
+
+        SharedService(String scopeTag) {
+            this.scopeTag = scopeTag;
+        }
+    }
+
+    private class Key
+            extends TestKeyWithScope {
+        Key(String name) {
+            super(name);
+        }
+
+        @Override
+        public void bindServices(ServiceBinder serviceBinder) {
+            serviceBinder.addService(name, new Service(name));
+            serviceBinder.addService("shared", new SharedService(name));
+        }
+    }
+
+    @Test
+    public void onlyTopScopeIsBuiltUntilOtherScopesAreNeeded() {
+        Backstack backstack = new Backstack();
+        backstack.setScopedServices(new ServiceProvider());
+        backstack.setLazyScopeBuilding(true);
+        backstack.setup(History.of(new Key("a"), new Key("b"), new Key("c"), new Key("d")));
+        backstack.setStateChanger(new ImmediateStateChanger());
+
+        assertThat(registeredScopes).containsExactly("d");
+        assertThat(backstack.hasPendingScopes()).isTrue();
+
+        backstack.goBack();
+
+        assertThat(registeredScopes).containsExactly("c");
+
+        assertThat(backstack.<Object>lookupFromScope("a", "a")).isNotNull();
+
+        assertThat(registeredScopes).containsExactly("c", "a");
+
+        backstack.buildPendingScopes();
+
+        assertThat(registeredScopes).containsExactly("c", "a", "b");
+        assertThat(backstack.hasPendingScopes()).isFalse();
+    }
+
+    @Test
+    public void pendingScopesAreBuiltOneKeyAtATime() {
+        Backstack backstack = new Backstack();
+        backstack.setScopedServices(new ServiceProvider());
+        backstack.setLazyScopeBuilding(true);
+        backstack.setup(History.of(new Key("a"), new Key("b"), new Key("c"), new Key("d")));
+        backstack.setStateChanger(new ImmediateStateChanger());
+
+        assertThat(backstack.buildNextPendingScope()).isTrue();
+        assertThat(registeredScopes).containsExactly("d", "a");
+
+        assertThat(backstack.buildNextPendingScope()).isTrue();
+        assertThat(registeredScopes).containsExactly("d", "a", "b");
+
+        assertThat(backstack.buildNextPendingScope()).isFalse();
+        assertThat(registeredScopes).containsExactly("d", "a", "b", "c");
+        assertThat(backstack.hasPendingScopes()).isFalse();
+        assertThat(backstack.<SharedService>lookupService("shared").scopeTag).isEqualTo("d");
+    }
+
+    @Test
+    public void lookupNotFoundInTopScopesBuildsPendingScopes() {
+        Backstack backstack = new Backstack();
+        backstack.setScopedServices(new ServiceProvider());
+        backstack.setLazyScopeBuilding(true);
+        backstack.setup(History.of(new Key("a"), new Key("b"), new Key("c"), new Key("d")));
+        backstack.setStateChanger(new ImmediateStateChanger());
+
+        assertThat(backstack.<SharedService>lookupService("shared").scopeTag).isEqualTo("d");
+        assertThat(backstack.hasPendingScopes()).isTrue();
+
+        assertThat(backstack.<Service>lookupService("b").scopeTag).isEqualTo("b");
+        assertThat(backstack.hasPendingScopes()).isFalse();
+        assertThat(registeredScopes).containsExactly("d", "a", "b", "c");
+    }
+
+    @Test
+    public void scopeOrderIsSameAsWithEagerBuilding() {
+        Backstack lazyBackstack = new Backstack();
+        lazyBackstack.setScopedServices(new ServiceProvider());
+        lazyBackstack.setLazyScopeBuilding(true);
+        lazyBackstack.setup(History.of(new Key("a"), new Key("b"), new Key("c"), new Key("d")));
+        lazyBackstack.setStateChanger(new ImmediateStateChanger());
+        lazyBackstack.buildPendingScopes();
+
+        Backstack eagerBackstack = new Backstack();
+        eagerBackstack.setScopedServices(new ServiceProvider());
+        eagerBackstack.setup(History.of(new Key("a"), new Key("b"), new Key("c"), new Key("d")));
+        eagerBackstack.setStateChanger(new ImmediateStateChanger());
+
+        assertThat(lazyBackstack.findScopesForKey(new Key("d"), ScopeLookupMode.ALL))
+                .containsExactlyElementsOf(eagerBackstack.findScopesForKey(new Key("d"), ScopeLookupMode.ALL));
+
+        lazyBackstack.goBack();
+        eagerBackstack.goBack();
+
+        assertThat(lazyBackstack.<SharedService>lookupService("shared").scopeTag).isEqualTo("c");
+        assertThat(eagerBackstack.<SharedService>lookupService("shared").scopeTag).isEqualTo("c");
+    }
+
+    @Test
+    public void scopesOfTopKeyWithScopeAreBuiltBelowKeyWithoutScope() {
+        Backstack backstack = new Backstack();
+        backstack.setScopedServices(new ServiceProvider());
+        backstack.setLazyScopeBuilding(true);
+        backstack.setup(History.of(new Key("a"), new Key("b"), new TestKey("c")));
+        backstack.setStateChanger(new ImmediateStateChanger());
+
+        assertThat(registeredScopes).containsExactly("b");
+        assertThat(backstack.<SharedService>lookupService("shared").scopeTag).isEqualTo("b");
+        assertThat(backstack.hasPendingScopes()).isTrue();
+
+        backstack.goBack();
+
+        assertThat(registeredScopes).containsExactly("b");
+
+        backstack.goBack();
+
+        assertThat(registeredScopes).containsExactly("a");
+    }
+
+    @Test
+    public void lazyScopeBuildingCannotBeSetAfterInitialStateChange() {
+        Backstack backstack = new Backstack();
+        backstack.setScopedServices(new ServiceProvider());
+        backstack.setup(History.of(new Key("a"), new Key("b"), new Key("c"), new Key("d")));
+        backstack.setStateChanger(new ImmediateStateChanger());
+
+        try {
+            backstack.setLazyScopeBuilding(true);
+            Assert.fail();
+        } catch(IllegalStateException e) {
+            // OK!
+        }
+    }
+}
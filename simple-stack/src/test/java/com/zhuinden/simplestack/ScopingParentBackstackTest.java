@@ -0,0 +1,131 @@
+/*
+ * Copyright 2021 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.simplestack;
+
+import com.zhuinden.simplestack.helpers.ImmediateStateChanger;
+import com.zhuinden.simplestack.helpers.ServiceProvider;
+import com.zhuinden.simplestack.helpers.TestKeyWithScope;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ScopingParentBackstackTest {
+    private static class Key
+            extends TestKeyWithScope {
+        private final String serviceTag;
+        private final Object service;
+
+        Key(String name, String serviceTag, Object service) {
+            super(name);
+            this.serviceTag = serviceTag;
+            this.service = service;
+        }
+
+        @Override
+        public void bindServices(ServiceBinder serviceBinder) {
+            serviceBinder.addService(serviceTag, service);
+        }
+    }
+
+    @Test
+    public void servicesAreLookedUpFromParentBackstack() {
+        Object parentService = new Object();
+        Object globalService = new Object();
+        Object childService = new Object();
+        Object shadowingService = new Object();
+
+        Backstack parent = new Backstack();
+        parent.setScopedServices(new ServiceProvider());
+        parent.setGlobalServices(GlobalServices.builder().addService("global", globalService).build());
+        parent.setup(History.of(new Key("parent", "parentService", parentService)));
+        parent.setStateChanger(new ImmediateStateChanger());
+
+        Backstack child = new Backstack();
+        child.setParentBackstack(parent);
+        child.setScopedServices(new ServiceProvider());
+        child.setGlobalServices(GlobalServices.builder().addService("parentService", shadowingService).build());
+        child.setup(History.of(new Key("child", "childService", childService)));
+        child.setStateChanger(new ImmediateStateChanger());
+
+        assertThat(child.<Object>lookupService("childService")).isSameAs(childService);
+        assertThat(child.<Object>lookupService("parentService")).isSameAs(shadowingService);
+        assertThat(child.<Object>lookupService("global")).isSameAs(globalService);
+        assertThat(child.<Object>lookupFromScope("child", "global")).isSameAs(globalService);
+        assertThat(child.canFindService("global")).isTrue();
+        assertThat(child.canFindFromScope("child", "global")).isTrue();
+        assertThat(child.canFindService("missing")).isFalse();
+
+        assertThat(parent.canFindService("childService")).isFalse();
+
+        try {
+            child.lookupService("missing");
+            Assert.fail();
+        } catch(IllegalStateException e) {
+            assertThat(e.getMessage()).startsWith("The service [missing] does not exist in any scopes");
+            assertThat(e.getMessage()).contains("child", "parent");
+        }
+    }
+
+    @Test
+    public void servicesAreLookedUpThroughTheParentChain() {
+        Object rootService = new Object();
+        Object middleService = new Object();
+
+        Backstack root = new Backstack();
+        root.setScopedServices(new ServiceProvider());
+        root.setup(History.of(new Key("root", "rootService", rootService)));
+        root.setStateChanger(new ImmediateStateChanger());
+
+        Backstack middle = new Backstack();
+        middle.setParentBackstack(root);
+        middle.setScopedServices(new ServiceProvider());
+        middle.setup(History.of(new Key("middle", "middleService", middleService)));
+        middle.setStateChanger(new ImmediateStateChanger());
+
+        Backstack child = new Backstack();
+        child.setParentBackstack(middle);
+        child.setScopedServices(new ServiceProvider());
+        child.setup(History.of(new Key("child", "childService", new Object())));
+        child.setStateChanger(new ImmediateStateChanger());
+
+        assertThat(child.<Object>lookupService("rootService")).isSameAs(rootService);
+        assertThat(child.<Object>lookupService("middleService")).isSameAs(middleService);
+        assertThat(child.<Object>lookupFromScope("child", "rootService")).isSameAs(rootService);
+
+        try {
+            child.lookupFromScope("child", "missing");
+            Assert.fail();
+        } catch(IllegalStateException e) {
+            assertThat(e.getMessage()).startsWith("The service [missing] does not exist in any scope that is accessible from [child]");
+        }
+    }
+
+    @Test
+    public void parentBackstackCannotFormCycle() {
+        Backstack parent = new Backstack();
+        Backstack child = new Backstack();
+        child.setParentBackstack(parent);
+
+        try {
+            parent.setParentBackstack(child);
+            Assert.fail();
+        } catch(IllegalArgumentException e) {
+            // OK!
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2021 Gabor Varadi
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhuinden.simplestack;
+
+import com.zhuinden.simplestack.helpers.TestKey;
+import com.zhuinden.simplestack.helpers.TestKeyWithScope;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import javax.annotation.Nonnull;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ScopingTimeSlicedBuildingTest {
+    private final List<StateChange> stateChanges = new ArrayList<>();
+
+    private final StateChanger stateChanger = new StateChanger() {
+        @Override
+        public void handleStateChange(@Nonnull StateChange stateChange, @Nonnull Callback completionCallback) {
+            stateChanges.add(stateChange);
+            completionCallback.stateChangeComplete();
+        }
+    };
+
+    private final LinkedList<Runnable> slices = new LinkedList<>();
+
+    private final Executor sliceExecutor = new Executor() {
+        @Override
+        public void execute(@Nonnull Runnable runnable) {
+            slices.add(runnable);
+        }
+    };
+
+    private final List<String> builtScopes = new ArrayList<>();
+
+    private final List<String> progress = new ArrayList<>();
+
+    private final ScopedServices slowScopedServices = new ScopedServices() {
+        @Override
+        public void bindServices(@Nonnull ServiceBinder serviceBinder) {
+            try {
+                Thread.sleep(5);
+            } catch(InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            serviceBinder.addService("service", new Object());
+            builtScopes.add(serviceBinder.getScopeTag());
+        }
+    };
+
+    private static class Key
+            extends TestKeyWithScope {
+        Key(String name) {
+            super(name);
+        }
+
+        @Override
+        public void bindServices(ServiceBinder serviceBinder) {
+        }
+    }
+
+    private static class ChildKey
+            extends Key
+            implements ScopeKey.Child {
+        ChildKey(String name) {
+            super(name);
+        }
+
+        @Nonnull
+        @Override
+        public List<String> getParentScopes() {
+            return Arrays.asList("parent1", "parent2");
+        }
+    }
+
+    private Backstack backstack;
+
+    @Before
+    public void setup() {
+        backstack = new Backstack();
+        backstack.setScopedServices(slowScopedServices);
+        backstack.setTimeSlicedScopeBuilding(1, sliceExecutor);
+        backstack.setScopeBuildingListener(new Backstack.ScopeBuildingListener() {
+            @Override
+            public void onScopeBuildingProgress(@Nonnull StateChange stateChange, int builtScopeCount, int scopeCount) {
+                progress.add(builtScopeCount + "/" + scopeCount);
+            }
+        });
+    }
+
+    private void runNextSlice() {
+        slices.removeFirst().run();
+    }
+
+    @Test
+    public void stateChangeIsHandledWhenScopesOfTopKeyAreBuilt() {
+        backstack.setup(History.of(new Key("a"), new Key("b"), new ChildKey("c")));
+        backstack.setStateChanger(stateChanger);
+
+        assertThat(builtScopes).containsExactly("parent1");
+        assertThat(backstack.isBuildingScopes()).isTrue();
+        assertThat(stateChanges).isEmpty();
+
+        runNextSlice();
+        runNextSlice();
+
+        assertThat(builtScopes).containsExactly("parent1", "parent2", "c");
+        assertThat(progress).containsExactly("1/3", "2/3", "3/3");
+        assertThat(stateChanges).hasSize(1);
+        assertThat(backstack.isBuildingScopes()).isFalse();
+        assertThat(backstack.hasPendingScopes()).isTrue();
+
+        while(!slices.isEmpty()) {
+            runNextSlice();
+        }
+
+        assertThat(builtScopes).containsExactly("parent1", "parent2", "c", "a", "b");
+        assertThat(backstack.hasPendingScopes()).isFalse();
+        assertThat(backstack.findScopesForKey(new ChildKey("c"), ScopeLookupMode.ALL)).containsExactly("c", "parent2", "parent1", "b", "a");
+    }
+
+    @Test
+    public void scopesOfTopKeyWithScopeAreBuiltBeforeStateChangeBelowKeyWithoutScope() {
+        backstack.setup(History.of(new Key("a"), new TestKey("b")));
+        backstack.setStateChanger(stateChanger);
+
+        assertThat(builtScopes).containsExactly("a");
+        assertThat(stateChanges).isEmpty();
+
+        runNextSlice();
+
+        assertThat(builtScopes).containsExactly("a");
+        assertThat(progress).containsExactly("1/2", "2/2");
+        assertThat(stateChanges).hasSize(1);
+        assertThat(backstack.isBuildingScopes()).isFalse();
+        assertThat(backstack.<Object>lookupFromScope("a", "service")).isNotNull();
+    }
+
+    @Test
+    public void lookupBuildsScopeBeforeItsSlice() {
+        backstack.setup(History.of(new Key("a"), new Key("b"), new ChildKey("c")));
+        backstack.setStateChanger(stateChanger);
+
+        assertThat(backstack.hasScope("b")).isTrue();
+        assertThat(builtScopes).containsExactly("parent1", "a", "b");
+    }
+
+    @Test
+    public void forcedStateChangeBuildsScopesOfTopKey() {
+        backstack.setup(History.of(new Key("a"), new Key("b"), new ChildKey("c")));
+        backstack.setStateChanger(stateChanger);
+
+        backstack.executePendingStateChange();
+
+        assertThat(stateChanges).isEmpty();
+        assertThat(backstack.isStateChangePending()).isFalse();
+        assertThat(builtScopes).containsExactly("parent1", "parent2", "c");
+    }
+
+    @Test
+    public void detachedStateChangerIsCalledWhenReattached() {
+        backstack.setup(History.of(new Key("a"), new Key("b"), new ChildKey("c")));
+        backstack.setStateChanger(stateChanger);
+        backstack.detachStateChanger();
+
+        runNextSlice();
+        runNextSlice();
+
+        assertThat(stateChanges).isEmpty();
+        assertThat(slices).isEmpty();
+
+        backstack.reattachStateChanger();
+        runNextSlice();
+
+        assertThat(stateChanges).hasSize(1);
+    }
+}
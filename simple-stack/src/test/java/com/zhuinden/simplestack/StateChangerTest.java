@@ -19,6 +19,8 @@ import android.content.Context;
 import android.os.Parcel;
 import android.os.Parcelable;
 
+import com.zhuinden.simplestack.helpers.TestKey;
+
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -506,4 +508,44 @@ public class StateChangerTest {
             // OK
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void interruptibleStateChangerIsNotifiedOfNewStateChangeDuringStateChange() {
+        class InterruptibleStateChanger
+                implements StateChanger, StateChanger.Interruptible {
+            private Callback pendingCallback;
+            private int interruptionCount;
+
+            @Override
+            public void handleStateChange(@Nonnull StateChange stateChange, @Nonnull Callback completionCallback) {
+                pendingCallback = completionCallback;
+            }
+
+            @Override
+            public void onNewStateChangeEnqueued() {
+                interruptionCount++;
+                Callback callback = pendingCallback;
+                pendingCallback = null;
+                callback.stateChangeComplete();
+            }
+        }
+
+        TestKey a = new TestKey("a");
+        TestKey b = new TestKey("b");
+        TestKey c = new TestKey("c");
+
+        Backstack backstack = new Backstack();
+        backstack.setup(History.of(a));
+        InterruptibleStateChanger stateChanger = new InterruptibleStateChanger();
+        backstack.setStateChanger(stateChanger);
+        assertThat(stateChanger.interruptionCount).isEqualTo(0);
+
+        backstack.goTo(b); // enqueued while the initial state change is in progress
+        assertThat(stateChanger.interruptionCount).isEqualTo(1);
+        assertThat(backstack.getHistory()).containsExactly(a);
+
+        backstack.goTo(c);
+        assertThat(stateChanger.interruptionCount).isEqualTo(2);
+        assertThat(backstack.getHistory()).containsExactly(a, b);
+    }
+}
@@ -38,7 +38,20 @@ import org.junit.runners.Suite;
         ScopingGlobalScopeTest.class,
         ScopingRegisteredCallbackTest.class,
         ScopingAliasTest.class,
-        ScopingBackEventDispatchTest.class
+        ScopingBackEventDispatchTest.class,
+        LruStateClearStrategyTest.class,
+        BackstackTrimMemoryTest.class,
+        NavigationJournalTest.class,
+        RetentionTierTest.class,
+        MultistackTest.class,
+        ScopingExitScopeIndexTest.class,
+        ScopingParentBackstackTest.class,
+        ScopingLazyBuildingTest.class,
+        ScopingTimeSlicedBuildingTest.class,
+        ScopingDeclaredServicesTest.class,
+        ScopingAsyncTeardownTest.class,
+        PreloadedGlobalServicesTest.class,
+        NavigationSnapshotTest.class
 })
 public class TestSuite {
 }
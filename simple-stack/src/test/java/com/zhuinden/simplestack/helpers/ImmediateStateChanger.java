@@ -0,0 +1,14 @@
+package com.zhuinden.simplestack.helpers;
+
+import com.zhuinden.simplestack.StateChange;
+import com.zhuinden.simplestack.StateChanger;
+
+import javax.annotation.Nonnull;
+
+public class ImmediateStateChanger
+        implements StateChanger {
+    @Override
+    public void handleStateChange(@Nonnull StateChange stateChange, @Nonnull Callback completionCallback) {
+        completionCallback.stateChangeComplete();
+    }
+}